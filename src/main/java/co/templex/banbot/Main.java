@@ -26,6 +26,7 @@ import org.slf4j.LoggerFactory;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.CountDownLatch;
 
@@ -50,7 +51,15 @@ public class Main {
 
     /**
      * Main method for this application. This reads both of the properties files (should they exist) and passes the
-     * appropriate properties instances to the Bot and HTTP Server instantiated within this method.
+     * appropriate properties instances to the Bot and HTTP Server instantiated within this method. Both share the
+     * server sources configured within bot.properties.
+     * <p>
+     * If http.properties names a primary, this instance is a read-only follower: only the HTTP Server is started, and
+     * bot.properties is not read.
+     * <p>
+     * The HTTP Server is started first, as it serves requests as soon as it is bound and loads the banlists in the
+     * background, while the bot connects to Discord. A breakdown of the startup phases is logged once all have ended,
+     * and the readiness of each component is served on "/ready".
      * <p>
      * Note that this will await the shutdown of both the bot and the http server before shutting down the JVM.
      *
@@ -59,20 +68,36 @@ public class Main {
      * @throws InterruptedException If the latch is interrupted at any point.
      */
     public static void main(String[] args) throws IOException, InterruptedException {
+        StartupTimer startupTimer = new StartupTimer();
+        startupTimer.expect("config load");
         Properties botProperties = new Properties(), httpProperties = new Properties();
-        try (FileInputStream bot = new FileInputStream("bot.properties")) {
-            botProperties.load(bot);
-        }
         try (FileInputStream http = new FileInputStream("http.properties")) {
             httpProperties.load(http);
         } catch (FileNotFoundException e) {
             logger.warn("Couldn't find http.properties, using defaults.", e);
         }
+        if (httpProperties.getProperty("primary") != null) {
+            // followers only serve banlists replicated from the primary, so neither the bot nor its properties exist
+            logger.info(String.format("Following %s; the Discord bot is disabled.", httpProperties.getProperty("primary")));
+            CountDownLatch shutdownLatch = new CountDownLatch(1);
+            HTTPServer httpServer = new HTTPServer(httpProperties, HTTPServer.defaultSources(httpProperties), shutdownLatch, startupTimer);
+            startupTimer.end("config load", startupTimer.getOrigin());
+            httpServer.start();
+            shutdownLatch.await();
+            return;
+        }
+        try (FileInputStream bot = new FileInputStream("bot.properties")) {
+            botProperties.load(bot);
+        }
+        List<ServerSource> sources = ServerSource.load(botProperties);
         CountDownLatch shutdownLatch = new CountDownLatch(2);
-        Bot bot = new Bot(botProperties, shutdownLatch);
-        bot.start();
-        HTTPServer httpServer = new HTTPServer(httpProperties, shutdownLatch);
+        // both declare their startup phases when constructed, so the breakdown is only logged once all have ended
+        HTTPServer httpServer = new HTTPServer(httpProperties, sources, shutdownLatch, startupTimer);
+        Bot bot = new Bot(botProperties, sources, shutdownLatch, startupTimer);
+        httpServer.addReadinessCheck("discord", bot::isReady);
+        startupTimer.end("config load", startupTimer.getOrigin());
         httpServer.start();
+        bot.start();
         shutdownLatch.await();
     }
 
@@ -0,0 +1,270 @@
+/*
+ * BanBot: A Discord bot and an HTTP server that manages the Templex banlist.
+ * Copyright (C) 2018  vtcakavsmoace
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.templex.banbot;
+
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.StringTokenizer;
+
+/**
+ * A single Minecraft server watched by this bot: where its logs and banlists live, which channel its bans are reported
+ * to and which script writes to its console. Instances of this class are immutable.
+ * <p>
+ * Sources are configured within bot.properties. Without a "servers" property, a single source named "default" is
+ * read from the working directory and reported to the "channel-id" channel, which matches a single-server setup.
+ * Otherwise "servers" lists the source names, separated by commas, and each source is configured as follows:
+ * <pre>
+ * server.&lt;name&gt;.directory      the server directory (required)
+ * server.&lt;name&gt;.channel-id     the report channel (defaults to "channel-id")
+ * server.&lt;name&gt;.log-directory  the log directory (defaults to "logs" within the server directory)
+ * server.&lt;name&gt;.banlist        the banlist file (defaults to "banned-players.json" within the server directory)
+ * server.&lt;name&gt;.ip-banlist     the IP banlist file (defaults to "banned-ips.json" within the server directory)
+ * server.&lt;name&gt;.command        the console script (defaults to "write_to_server" within the server directory)
+ * </pre>
+ */
+public final class ServerSource {
+
+    /**
+     * The logger instance for all instances of ServerSource. This serves solely for debug purposes.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ServerSource.class);
+
+    /**
+     * The name of the source used when no "servers" property is present.
+     */
+    public static final String DEFAULT_NAME = "default";
+
+    /**
+     * The name of this source.
+     */
+    private final String name;
+
+    /**
+     * The directory containing latest.log.
+     */
+    private final Path logDirectory;
+
+    /**
+     * The banned-players.json file.
+     */
+    private final Path banlistPath;
+
+    /**
+     * The banned-ips.json file.
+     */
+    private final Path ipBanlistPath;
+
+    /**
+     * The ID of the channel which bans on this source are reported to and issued from.
+     */
+    private final String channelId;
+
+    /**
+     * The script which writes a line to the console of this source.
+     */
+    private final String command;
+
+    /**
+     * Main constructor for ServerSource.
+     *
+     * @param name          The name of this source.
+     * @param logDirectory  The directory containing latest.log.
+     * @param banlistPath   The banned-players.json file.
+     * @param ipBanlistPath The banned-ips.json file.
+     * @param channelId     The ID of the report channel. May be null if no bot is run.
+     * @param command       The script which writes a line to the console.
+     */
+    public ServerSource(@NonNull String name, @NonNull Path logDirectory, @NonNull Path banlistPath,
+                        @NonNull Path ipBanlistPath, String channelId, @NonNull String command) {
+        this.name = name;
+        this.logDirectory = logDirectory;
+        this.banlistPath = banlistPath;
+        this.ipBanlistPath = ipBanlistPath;
+        this.channelId = channelId;
+        this.command = command;
+    }
+
+    /**
+     * Reads all sources configured within the passed properties. See the class documentation for the format.
+     *
+     * @param properties The bot properties.
+     * @return sources The configured sources, in the order they are listed. Never empty.
+     * @throws IllegalArgumentException If a source is listed twice or lacks a directory.
+     */
+    public static List<ServerSource> load(@NonNull Properties properties) {
+        String defaultChannel = properties.getProperty("channel-id");
+        String servers = properties.getProperty("servers", "").trim();
+        if (servers.isEmpty()) {
+            return Collections.singletonList(of(DEFAULT_NAME, Paths.get(System.getProperty("user.dir")), defaultChannel));
+        }
+        Set<String> names = new LinkedHashSet<>();
+        List<ServerSource> sources = new ArrayList<>();
+        for (String name : servers.split(",")) {
+            name = name.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (!names.add(name)) {
+                throw new IllegalArgumentException(String.format("Server %s is listed twice.", name));
+            }
+            String prefix = "server." + name + ".";
+            String directory = properties.getProperty(prefix + "directory");
+            if (directory == null) {
+                throw new IllegalArgumentException(String.format("Server %s lacks a %sdirectory property.", name, prefix));
+            }
+            Path root = Paths.get(directory);
+            sources.add(new ServerSource(
+                    name,
+                    path(properties, prefix + "log-directory", root.resolve("logs")),
+                    path(properties, prefix + "banlist", root.resolve("banned-players.json")),
+                    path(properties, prefix + "ip-banlist", root.resolve("banned-ips.json")),
+                    properties.getProperty(prefix + "channel-id", defaultChannel),
+                    properties.getProperty(prefix + "command", root.resolve("write_to_server").toString())
+            ));
+        }
+        return Collections.unmodifiableList(sources);
+    }
+
+    /**
+     * Creates a source laid out like a standard server directory.
+     *
+     * @param name      The name of the source.
+     * @param directory The server directory.
+     * @param channelId The ID of the report channel. May be null.
+     * @return source The source.
+     */
+    public static ServerSource of(@NonNull String name, @NonNull Path directory, String channelId) {
+        return new ServerSource(name, directory.resolve("logs"), directory.resolve("banned-players.json"),
+                directory.resolve("banned-ips.json"), channelId, directory.resolve("write_to_server").toString());
+    }
+
+    /**
+     * Reads a path property, falling back to the passed default.
+     *
+     * @param properties The properties to read from.
+     * @param key        The property key.
+     * @param fallback   The default path.
+     * @return path The configured path.
+     */
+    private static Path path(Properties properties, String key, Path fallback) {
+        String value = properties.getProperty(key);
+        return value == null ? fallback : Paths.get(value);
+    }
+
+    /**
+     * Returns the name of this source.
+     *
+     * @return name The name of this source.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the directory containing latest.log.
+     *
+     * @return logDirectory The log directory.
+     */
+    public Path getLogDirectory() {
+        return logDirectory;
+    }
+
+    /**
+     * Returns the banned-players.json file.
+     *
+     * @return banlistPath The banlist file.
+     */
+    public Path getBanlistPath() {
+        return banlistPath;
+    }
+
+    /**
+     * Returns the banned-ips.json file.
+     *
+     * @return ipBanlistPath The IP banlist file.
+     */
+    public Path getIpBanlistPath() {
+        return ipBanlistPath;
+    }
+
+    /**
+     * Returns the ID of the channel which bans on this source are reported to and issued from.
+     *
+     * @return channelId The channel ID, or null if none is configured.
+     */
+    public String getChannelId() {
+        return channelId;
+    }
+
+    /**
+     * Returns the script which writes a line to the console of this source.
+     *
+     * @return command The console script.
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * Writes a line to the console of this source through its console script. Single quotes are escaped for the shell
+     * of the script. The script path is passed as a single argument, so it may contain spaces; the line is passed as
+     * one argument per word, as the script has always received it.
+     *
+     * @param line The line to write, ex. "ban Notch Griefing".
+     * @throws IOException If the script cannot be started.
+     */
+    public void writeToConsole(@NonNull String line) throws IOException {
+        StringTokenizer words = new StringTokenizer(String.format("%s\\n", line.replace("'", "\"'\"'\"")));
+        String[] executedCommand = new String[words.countTokens() + 1];
+        executedCommand[0] = command;
+        for (int i = 1; i < executedCommand.length; i++) {
+            executedCommand[i] = words.nextToken();
+        }
+        logger.info(String.format("Executing raw command \"%s\" on server %s", String.join(" ", executedCommand), name));
+        Runtime.getRuntime().exec(executedCommand);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof ServerSource && name.equals(((ServerSource) o).name);
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ServerSource{name=%s, logDirectory=%s, channelId=%s}", name, logDirectory,
+                Objects.toString(channelId));
+    }
+}
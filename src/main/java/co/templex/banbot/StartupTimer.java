@@ -0,0 +1,119 @@
+/*
+ * BanBot: A Discord bot and an HTTP server that manages the Templex banlist.
+ * Copyright (C) 2018  vtcakavsmoace
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.templex.banbot;
+
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the durations of the startup phases of this application, which may run concurrently, and logs a breakdown
+ * once every expected phase has ended.
+ * <p>
+ * Components declare their phases with {@link #expect(String...)} when they are constructed, so that the breakdown is
+ * not logged before a component that has yet to start. Each phase is then ended with {@link #end(String, long)} or
+ * {@link #fail(String, long)}, passing the {@link System#nanoTime()} it began at.
+ */
+public final class StartupTimer {
+
+    /**
+     * The logger instance for all instances of StartupTimer. This serves solely for debug purposes.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(StartupTimer.class);
+
+    /**
+     * The time this timer was created, in nanoseconds as of {@link System#nanoTime()}.
+     */
+    private final long origin = System.nanoTime();
+
+    /**
+     * The description of every ended phase, in the order they ended. Guarded by this timer.
+     */
+    private final Map<String, String> ended = new LinkedHashMap<>();
+
+    /**
+     * The phases yet to end. Guarded by this timer.
+     */
+    private final Set<String> pending = new LinkedHashSet<>();
+
+    /**
+     * Returns the time this timer was created, which phases beginning at startup may pass as their start.
+     *
+     * @return origin The creation time in nanoseconds as of {@link System#nanoTime()}.
+     */
+    public long getOrigin() {
+        return origin;
+    }
+
+    /**
+     * Declares phases which are yet to end.
+     *
+     * @param phases The names of the phases.
+     */
+    public synchronized void expect(@NonNull String... phases) {
+        for (String phase : phases) {
+            if (!ended.containsKey(phase)) {
+                pending.add(phase);
+            }
+        }
+    }
+
+    /**
+     * Ends a phase which succeeded.
+     *
+     * @param phase   The name of the phase.
+     * @param started The time the phase began, in nanoseconds as of {@link System#nanoTime()}.
+     */
+    public void end(@NonNull String phase, long started) {
+        record(phase, started, "");
+    }
+
+    /**
+     * Ends a phase which failed.
+     *
+     * @param phase   The name of the phase.
+     * @param started The time the phase began, in nanoseconds as of {@link System#nanoTime()}.
+     */
+    public void fail(@NonNull String phase, long started) {
+        record(phase, started, ", failed");
+    }
+
+    /**
+     * Records the end of a phase, logging the breakdown if it was the last one pending.
+     *
+     * @param phase   The name of the phase.
+     * @param started The time the phase began, in nanoseconds as of {@link System#nanoTime()}.
+     * @param note    A note appended to the description of the phase.
+     */
+    private synchronized void record(String phase, long started, String note) {
+        long now = System.nanoTime();
+        ended.put(phase, String.format("%s %d ms (done at %d ms%s)", phase, TimeUnit.NANOSECONDS.toMillis(now - started),
+                TimeUnit.NANOSECONDS.toMillis(now - origin), note));
+        if (pending.remove(phase) && pending.isEmpty()) {
+            logger.info(String.format("Started in %d ms: %s.", TimeUnit.NANOSECONDS.toMillis(now - origin),
+                    String.join(", ", ended.values())));
+        }
+    }
+}
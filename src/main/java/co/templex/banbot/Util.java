@@ -21,9 +21,6 @@ package co.templex.banbot;
 import de.btobastian.javacord.entities.message.embed.EmbedBuilder;
 
 import java.awt.*;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 
 /**
  * Utilities class for this library.
@@ -70,15 +67,4 @@ public class Util {
         return emb;
     }
 
-    /**
-     * Reads an entire file given a path instance.
-     *
-     * @param path The path of the file to read from.
-     * @return bytes All bytes of this file in UTF-8 format contained within a single string.
-     * @throws IOException If the read fails (file doesn't exist, lacks permissions, etc.)
-     */
-    public static String readPathAsString(Path path) throws IOException {
-        return new String(Files.readAllBytes(path));
-    }
-
 }
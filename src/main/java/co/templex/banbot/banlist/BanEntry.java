@@ -0,0 +1,160 @@
+/*
+ * BanBot: A Discord bot and an HTTP server that manages the Templex banlist.
+ * Copyright (C) 2018  vtcakavsmoace
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.templex.banbot.banlist;
+
+import lombok.NonNull;
+
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * A single entry of banned-players.json. Instances of this class are immutable.
+ */
+public final class BanEntry {
+
+    /**
+     * The UUID of the banned player.
+     */
+    private final UUID uuid;
+
+    /**
+     * The name of the banned player at the time of the ban.
+     */
+    private final String name;
+
+    /**
+     * The creation date of the ban, as written by the Minecraft server.
+     */
+    private final String created;
+
+    /**
+     * The issuer of the ban.
+     */
+    private final String source;
+
+    /**
+     * The expiry date of the ban, or "forever" for permanent bans.
+     */
+    private final String expires;
+
+    /**
+     * The reason given for the ban.
+     */
+    private final String reason;
+
+    /**
+     * Main constructor for BanEntry. Only the UUID is required; all other fields may be null if the banlist omits them.
+     *
+     * @param uuid    The UUID of the banned player.
+     * @param name    The name of the banned player.
+     * @param created The creation date of the ban.
+     * @param source  The issuer of the ban.
+     * @param expires The expiry date of the ban.
+     * @param reason  The reason given for the ban.
+     */
+    public BanEntry(@NonNull UUID uuid, String name, String created, String source, String expires, String reason) {
+        this.uuid = uuid;
+        this.name = name;
+        this.created = created;
+        this.source = source;
+        this.expires = expires;
+        this.reason = reason;
+    }
+
+    /**
+     * Returns the UUID of the banned player.
+     *
+     * @return uuid The UUID of the banned player.
+     */
+    public UUID getUuid() {
+        return uuid;
+    }
+
+    /**
+     * Returns the name of the banned player.
+     *
+     * @return name The name of the banned player.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the creation date of the ban.
+     *
+     * @return created The creation date of the ban.
+     */
+    public String getCreated() {
+        return created;
+    }
+
+    /**
+     * Returns the issuer of the ban.
+     *
+     * @return source The issuer of the ban.
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Returns the expiry date of the ban.
+     *
+     * @return expires The expiry date of the ban.
+     */
+    public String getExpires() {
+        return expires;
+    }
+
+    /**
+     * Returns the reason given for the ban.
+     *
+     * @return reason The reason given for the ban.
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof BanEntry)) {
+            return false;
+        }
+        BanEntry other = (BanEntry) o;
+        return uuid.equals(other.uuid)
+                && Objects.equals(name, other.name)
+                && Objects.equals(created, other.created)
+                && Objects.equals(source, other.source)
+                && Objects.equals(expires, other.expires)
+                && Objects.equals(reason, other.reason);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(uuid, name, created, source, expires, reason);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BanEntry{uuid=%s, name=%s, source=%s, expires=%s}", uuid, name, source, expires);
+    }
+}
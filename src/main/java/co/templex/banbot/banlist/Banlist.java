@@ -0,0 +1,472 @@
+/*
+ * BanBot: A Discord bot and an HTTP server that manages the Templex banlist.
+ * Copyright (C) 2018  vtcakavsmoace
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.templex.banbot.banlist;
+
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * A banlist file and the compact forms derived from it. The file is only re-read when its size or modification time
+ * changes, at which point a new revision of the index, snapshot and Bloom filter is published by swapping a single
+ * reference. Readers never block and always see a consistent revision.
+ */
+public class Banlist {
+
+    /**
+     * The logger instance for all instances of Banlist. This serves solely for debug purposes.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(Banlist.class);
+
+    /**
+     * The minimum number of changed entries at which a diff is abandoned in favour of a full diff.
+     */
+    private static final int MIN_DIFF_LIMIT = 4096;
+
+    /**
+     * The path of the banlist file.
+     */
+    private final Path path;
+
+    /**
+     * The false positive rate the Bloom filter is sized for.
+     */
+    private final double falsePositiveRate;
+
+    /**
+     * The most recently published state of this banlist.
+     */
+    private final AtomicReference<State> state = new AtomicReference<>(new State(-1, -1, BanlistIndex.EMPTY, 0, 0.5));
+
+    /**
+     * Listeners notified of every new revision.
+     */
+    private final List<Consumer<BanlistDiff>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * The modification time of the file as of the last failed read, or -1. Guarded by this banlist.
+     */
+    private long failedModified = -1;
+
+    /**
+     * The size of the file as of the last failed read, or -1. Guarded by this banlist.
+     */
+    private long failedSize = -1;
+
+    /**
+     * Main constructor for Banlist. Nothing is read until {@link #refresh()} is called.
+     *
+     * @param path              The path of the banlist file.
+     * @param falsePositiveRate The false positive rate the Bloom filter is sized for.
+     */
+    public Banlist(@NonNull Path path, double falsePositiveRate) {
+        this(falsePositiveRate, path);
+    }
+
+    /**
+     * Constructor for Banlist backing both file banlists and replicas.
+     *
+     * @param falsePositiveRate The false positive rate the Bloom filter is sized for.
+     * @param path              The path of the banlist file, or null for a replica.
+     */
+    private Banlist(double falsePositiveRate, Path path) {
+        this.path = path;
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    /**
+     * Creates a replica: a banlist with no file of its own, whose revisions are published by a replicator through
+     * {@link #publish(long, BanlistIndex)} and {@link #publish(long, BanlistIndex, List, List)}. Refreshing a replica
+     * does nothing.
+     *
+     * @param falsePositiveRate The false positive rate the Bloom filter is sized for.
+     * @return banlist The empty replica.
+     */
+    public static Banlist replica(double falsePositiveRate) {
+        return new Banlist(falsePositiveRate, null);
+    }
+
+    /**
+     * Returns the path of the banlist file.
+     *
+     * @return path The path of the banlist file, or null if this is a replica.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Registers a listener which is notified of every new revision, in order, on the refreshing thread.
+     *
+     * @param listener The listener to register.
+     */
+    public void addListener(@NonNull Consumer<BanlistDiff> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Re-reads the banlist file if it has changed since the last refresh. This is cheap when nothing has changed, and
+     * is safe to call concurrently; only one caller will rebuild the banlist.
+     * <p>
+     * The file is streamed entry by entry into a new index while being diffed against the previous one, so a reload
+     * holds the previous index, the index being built and the changed entries, but never the file contents or a
+     * second copy of the banlist as objects. Should the changes exceed an eighth of the banlist, a full diff is
+     * published instead of holding them.
+     * <p>
+     * Should the file fail to parse, ex. while the server is still writing it, the previous revision stays published
+     * and the file is not read again until its size or modification time changes once more.
+     *
+     * @return diff The changes since the previous revision, or null if the file has not changed or is the file which
+     * last failed to parse.
+     * @throws IOException If the banlist file is unreadable or malformed.
+     */
+    public BanlistDiff refresh() throws IOException {
+        if (path == null) {
+            return null;
+        }
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        long modified = attributes.lastModifiedTime().toMillis(), size = attributes.size();
+        if (state.get().matches(modified, size)) {
+            return null;
+        }
+        synchronized (this) {
+            State current = state.get();
+            if (current.matches(modified, size) || (failedModified == modified && failedSize == size)) {
+                return null;
+            }
+            long started = System.nanoTime();
+            BanlistIndex previous = current.index;
+            BanlistIndex.Builder builder = new BanlistIndex.Builder(previous.size());
+            BitSet seen = new BitSet(previous.size());
+            List<BanEntry> added = new ArrayList<>(), removed = new ArrayList<>();
+            // the diff is abandoned in favour of a full diff once it grows too large to be worth holding
+            int limit = Math.max(MIN_DIFF_LIMIT, previous.size() / 8);
+            boolean[] full = {current.snapshot.getRevision() == 0};
+            int skipped;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                failedModified = modified;
+                failedSize = size;
+                skipped = BanlistParser.parse(channel, entry -> {
+                    builder.add(entry);
+                    if (full[0]) {
+                        return;
+                    }
+                    int position = previous.indexOf(entry.getUuid());
+                    if (position >= 0) {
+                        seen.set(position);
+                    }
+                    if (position < 0 || !previous.entryEquals(position, entry)) {
+                        added.add(entry);
+                        if (added.size() > limit) {
+                            full[0] = true;
+                            added.clear();
+                        }
+                    }
+                });
+            } catch (IOException e) {
+                logger.warn(String.format("Keeping revision %d of %s until it changes again.", current.snapshot.getRevision(), path));
+                throw e;
+            }
+            failedModified = -1;
+            failedSize = -1;
+            if (!full[0]) {
+                for (int i = seen.nextClearBit(0); i < previous.size() && !full[0]; i = seen.nextClearBit(i + 1)) {
+                    removed.add(previous.get(i));
+                    full[0] = added.size() + removed.size() > limit;
+                }
+            }
+            BanlistIndex index = builder.build();
+            long revision = current.snapshot.getRevision() + 1;
+            BanlistDiff diff = full[0]
+                    ? new BanlistDiff(revision, previous, index)
+                    : new BanlistDiff(revision, previous, index, added, removed);
+            state.set(new State(modified, size, index, revision, falsePositiveRate));
+            logger.info(String.format("Loaded revision %d of %s with %d entries (%d bytes/entry, +%d/-%d, %d skipped) in %d ms.",
+                    revision, path, index.size(), index.estimateMemory() / Math.max(1, index.size()),
+                    full[0] ? index.size() : added.size(), full[0] ? previous.size() : removed.size(), skipped,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started)));
+            notifyListeners(diff);
+            return diff;
+        }
+    }
+
+    /**
+     * Publishes a replicated revision holding the passed index in full. Only replicas may be published to.
+     *
+     * @param revision The revision number, as assigned by the primary.
+     * @param index    The index of the revision.
+     * @return diff The full diff from the previous revision.
+     * @throws IllegalStateException If this banlist is not a replica.
+     */
+    public synchronized BanlistDiff publish(long revision, @NonNull BanlistIndex index) {
+        return publish(revision, new BanlistDiff(revision, checkReplica().index, index));
+    }
+
+    /**
+     * Publishes a replicated revision differing from the previous one by the passed entries. Only replicas may be
+     * published to.
+     *
+     * @param revision The revision number, as assigned by the primary.
+     * @param index    The index of the revision.
+     * @param added    The entries added or changed since the previous revision.
+     * @param removed  The entries removed since the previous revision.
+     * @return diff The diff from the previous revision.
+     * @throws IllegalStateException If this banlist is not a replica.
+     */
+    public synchronized BanlistDiff publish(long revision, @NonNull BanlistIndex index, @NonNull List<BanEntry> added,
+                                            @NonNull List<BanEntry> removed) {
+        return publish(revision, new BanlistDiff(revision, checkReplica().index, index, added, removed));
+    }
+
+    /**
+     * Publishes a replicated revision and notifies listeners.
+     *
+     * @param revision The revision number.
+     * @param diff     The diff from the previous revision.
+     * @return diff The passed diff.
+     */
+    private BanlistDiff publish(long revision, BanlistDiff diff) {
+        BanlistIndex index = diff.getCurrent();
+        state.set(new State(-1, -1, index, revision, falsePositiveRate));
+        logger.info(String.format("Replicated revision %d with %d entries (+%d/-%d).", revision, index.size(),
+                diff.isFull() ? index.size() : diff.getAdded().size(),
+                diff.isFull() ? diff.getPrevious().size() : diff.getRemoved().size()));
+        notifyListeners(diff);
+        return diff;
+    }
+
+    /**
+     * Ensures that this banlist is a replica.
+     *
+     * @return state The current state.
+     * @throws IllegalStateException If this banlist is not a replica.
+     */
+    private State checkReplica() {
+        if (path != null) {
+            throw new IllegalStateException("Only replicas may be published to.");
+        }
+        return state.get();
+    }
+
+    /**
+     * Notifies every listener of a new revision. A failing listener does not affect the others.
+     *
+     * @param diff The diff of the new revision.
+     */
+    private void notifyListeners(BanlistDiff diff) {
+        for (Consumer<BanlistDiff> listener : listeners) {
+            try {
+                listener.accept(diff);
+            } catch (RuntimeException e) {
+                logger.error("Banlist listener failed.", e);
+            }
+        }
+    }
+
+    /**
+     * Returns the current index of this banlist. The returned index is immutable and stays valid after later refreshes.
+     *
+     * @return index The current index.
+     */
+    public BanlistIndex getIndex() {
+        return state.get().index;
+    }
+
+    /**
+     * Returns the current snapshot of this banlist.
+     *
+     * @return snapshot The current snapshot.
+     */
+    public BanlistSnapshot getSnapshot() {
+        return state.get().snapshot;
+    }
+
+    /**
+     * Returns the encoded form of the current snapshot, together with the revision and checksum it encodes.
+     *
+     * @return encoded The encoded snapshot.
+     */
+    public Encoded getEncodedSnapshot() {
+        return state.get().encodedSnapshot;
+    }
+
+    /**
+     * Returns the current Bloom filter of this banlist.
+     *
+     * @return filter The current Bloom filter.
+     */
+    public BloomFilter getBloomFilter() {
+        return state.get().filter;
+    }
+
+    /**
+     * Returns the encoded form of the current Bloom filter, together with the revision and checksum it encodes.
+     *
+     * @return encoded The encoded Bloom filter.
+     */
+    public Encoded getEncodedBloomFilter() {
+        return state.get().encodedFilter;
+    }
+
+    /**
+     * The encoded form of a snapshot or Bloom filter, labelled with the revision and snapshot checksum it was
+     * encoded from. These are read together so that a concurrent refresh can never mislabel the bytes.
+     */
+    public static final class Encoded {
+
+        /**
+         * The encoded revision.
+         */
+        private final long revision;
+
+        /**
+         * The checksum of the snapshot of the encoded revision.
+         */
+        private final long checksum;
+
+        /**
+         * The encoded form.
+         */
+        private final byte[] bytes;
+
+        /**
+         * Main constructor for Encoded.
+         *
+         * @param snapshot The snapshot of the encoded revision.
+         * @param bytes    The encoded form.
+         */
+        private Encoded(BanlistSnapshot snapshot, byte[] bytes) {
+            this.revision = snapshot.getRevision();
+            this.checksum = snapshot.getChecksum();
+            this.bytes = bytes;
+        }
+
+        /**
+         * Returns the encoded revision.
+         *
+         * @return revision The revision number.
+         */
+        public long getRevision() {
+            return revision;
+        }
+
+        /**
+         * Returns the checksum of the snapshot of the encoded revision.
+         *
+         * @return checksum The snapshot checksum.
+         */
+        public long getChecksum() {
+            return checksum;
+        }
+
+        /**
+         * Returns the encoded form. The returned array must not be modified.
+         *
+         * @return bytes The encoded form.
+         */
+        public byte[] getBytes() {
+            return bytes;
+        }
+    }
+
+    /**
+     * A published revision of the banlist. Encoded forms are computed once per revision rather than per request.
+     */
+    private static final class State {
+
+        /**
+         * The modification time of the file this state was read from.
+         */
+        private final long modified;
+
+        /**
+         * The size of the file this state was read from.
+         */
+        private final long size;
+
+        /**
+         * The index of this revision.
+         */
+        private final BanlistIndex index;
+
+        /**
+         * The snapshot of this revision.
+         */
+        private final BanlistSnapshot snapshot;
+
+        /**
+         * The encoded snapshot of this revision.
+         */
+        private final Encoded encodedSnapshot;
+
+        /**
+         * The Bloom filter of this revision.
+         */
+        private final BloomFilter filter;
+
+        /**
+         * The encoded Bloom filter of this revision.
+         */
+        private final Encoded encodedFilter;
+
+        /**
+         * Main constructor for State.
+         *
+         * @param modified          The modification time of the file this state was read from.
+         * @param size              The size of the file this state was read from.
+         * @param index             The index of this revision.
+         * @param revision          The revision number.
+         * @param falsePositiveRate The false positive rate the Bloom filter is sized for.
+         */
+        private State(long modified, long size, BanlistIndex index, long revision, double falsePositiveRate) {
+            this.modified = modified;
+            this.size = size;
+            this.index = index;
+            this.snapshot = index.toSnapshot(revision);
+            this.encodedSnapshot = new Encoded(snapshot, snapshot.toBytes());
+            this.filter = new BloomFilter(snapshot, falsePositiveRate);
+            this.encodedFilter = new Encoded(snapshot, filter.toBytes());
+        }
+
+        /**
+         * Checks whether this state was read from a file with the passed attributes.
+         *
+         * @param modified The modification time of the file.
+         * @param size     The size of the file.
+         * @return matches Whether the attributes match.
+         */
+        private boolean matches(long modified, long size) {
+            return this.modified == modified && this.size == size;
+        }
+    }
+}
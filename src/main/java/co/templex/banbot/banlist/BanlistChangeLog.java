@@ -0,0 +1,298 @@
+/*
+ * BanBot: A Discord bot and an HTTP server that manages the Templex banlist.
+ * Copyright (C) 2018  vtcakavsmoace
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.templex.banbot.banlist;
+
+import lombok.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * A bounded log of the most recent revisions of a banlist, from which replicas catch up. Register it as a listener of
+ * the banlist before its first refresh.
+ * <p>
+ * Only the changed entries of each revision are retained, never the indexes themselves, and the oldest revisions are
+ * dropped once more than the configured number of changed entries is held. A replica whose revision is no longer
+ * covered, or which followed an earlier process (see {@link #getEpoch()}), is sent the full banlist instead.
+ */
+public class BanlistChangeLog implements Consumer<BanlistDiff> {
+
+    /**
+     * Identifies the revision sequence of this log. Revisions restart with every process, so a replica must only ask
+     * for changes since a revision of the same epoch.
+     */
+    private final long epoch = ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE;
+
+    /**
+     * The maximum number of changed entries retained.
+     */
+    private final int capacity;
+
+    /**
+     * The retained revisions, oldest first.
+     */
+    private final ArrayDeque<Change> changes = new ArrayDeque<>();
+
+    /**
+     * The number of changed entries within the retained revisions.
+     */
+    private int retained;
+
+    /**
+     * The revision preceding the oldest retained revision. Changes since any revision from here on are available.
+     */
+    private long base;
+
+    /**
+     * The latest revision.
+     */
+    private long revision;
+
+    /**
+     * The index of the latest revision.
+     */
+    private BanlistIndex index = BanlistIndex.EMPTY;
+
+    /**
+     * Main constructor for BanlistChangeLog.
+     *
+     * @param capacity The maximum number of changed entries retained.
+     */
+    public BanlistChangeLog(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative.");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns the epoch of this log, which identifies its revision sequence.
+     *
+     * @return epoch The epoch of this log.
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Records a published revision. A full diff, or a revision not directly following the previous one, resets the
+     * log, as there is nothing to replay.
+     *
+     * @param diff The published diff.
+     */
+    @Override
+    public synchronized void accept(@NonNull BanlistDiff diff) {
+        if (diff.isFull() || diff.getRevision() != revision + 1) {
+            changes.clear();
+            retained = 0;
+            base = diff.getRevision();
+        } else {
+            Change change = new Change(diff.getRevision(), diff.getAdded(), diff.getRemoved());
+            changes.addLast(change);
+            retained += change.size();
+            while (retained > capacity && !changes.isEmpty()) {
+                Change dropped = changes.removeFirst();
+                retained -= dropped.size();
+                base = dropped.revision;
+            }
+        }
+        revision = diff.getRevision();
+        index = diff.getCurrent();
+    }
+
+    /**
+     * Reads everything a replica needs to catch up from the passed revision.
+     *
+     * @param epoch The epoch the replica's revision belongs to.
+     * @param since The revision the replica holds.
+     * @return feed The revisions since the passed one, or the full banlist if they are not available.
+     */
+    public synchronized Feed read(long epoch, long since) {
+        if (epoch != this.epoch || since < base || since > revision) {
+            return new Feed(this.epoch, revision, index, Collections.emptyList());
+        }
+        List<Change> covered = new ArrayList<>();
+        for (Change change : changes) {
+            if (change.revision > since) {
+                covered.add(change);
+            }
+        }
+        return new Feed(this.epoch, revision, null, covered);
+    }
+
+    /**
+     * The changed entries of a single revision.
+     */
+    public static final class Change {
+
+        /**
+         * The revision.
+         */
+        private final long revision;
+
+        /**
+         * The entries added or changed by the revision.
+         */
+        private final List<BanEntry> added;
+
+        /**
+         * The entries removed by the revision.
+         */
+        private final List<BanEntry> removed;
+
+        /**
+         * Main constructor for Change.
+         *
+         * @param revision The revision.
+         * @param added    The entries added or changed by the revision.
+         * @param removed  The entries removed by the revision.
+         */
+        private Change(long revision, List<BanEntry> added, List<BanEntry> removed) {
+            this.revision = revision;
+            this.added = added;
+            this.removed = removed;
+        }
+
+        /**
+         * Returns the revision.
+         *
+         * @return revision The revision.
+         */
+        public long getRevision() {
+            return revision;
+        }
+
+        /**
+         * Returns the entries added or changed by the revision.
+         *
+         * @return added The added entries.
+         */
+        public List<BanEntry> getAdded() {
+            return added;
+        }
+
+        /**
+         * Returns the entries removed by the revision.
+         *
+         * @return removed The removed entries.
+         */
+        public List<BanEntry> getRemoved() {
+            return removed;
+        }
+
+        /**
+         * Returns the number of changed entries.
+         *
+         * @return size The number of changed entries.
+         */
+        private int size() {
+            return added.size() + removed.size();
+        }
+    }
+
+    /**
+     * What a replica needs to catch up: either the revisions since its own, or the full banlist.
+     */
+    public static final class Feed {
+
+        /**
+         * The epoch of the log.
+         */
+        private final long epoch;
+
+        /**
+         * The revision the replica holds once caught up.
+         */
+        private final long revision;
+
+        /**
+         * The full banlist, or null if the changes suffice.
+         */
+        private final BanlistIndex index;
+
+        /**
+         * The revisions to replay, oldest first.
+         */
+        private final List<Change> changes;
+
+        /**
+         * Main constructor for Feed.
+         *
+         * @param epoch    The epoch of the log.
+         * @param revision The revision the replica holds once caught up.
+         * @param index    The full banlist, or null if the changes suffice.
+         * @param changes  The revisions to replay, oldest first.
+         */
+        private Feed(long epoch, long revision, BanlistIndex index, List<Change> changes) {
+            this.epoch = epoch;
+            this.revision = revision;
+            this.index = index;
+            this.changes = Collections.unmodifiableList(changes);
+        }
+
+        /**
+         * Returns the epoch of the log.
+         *
+         * @return epoch The epoch.
+         */
+        public long getEpoch() {
+            return epoch;
+        }
+
+        /**
+         * Returns the revision the replica holds once caught up.
+         *
+         * @return revision The revision.
+         */
+        public long getRevision() {
+            return revision;
+        }
+
+        /**
+         * Checks whether the replica must replace its banlist rather than replay changes.
+         *
+         * @return full Whether the full banlist is sent.
+         */
+        public boolean isFull() {
+            return index != null;
+        }
+
+        /**
+         * Returns the full banlist.
+         *
+         * @return index The full banlist, or null if the changes suffice.
+         */
+        public BanlistIndex getIndex() {
+            return index;
+        }
+
+        /**
+         * Returns the revisions to replay, oldest first.
+         *
+         * @return changes The revisions to replay. Empty if the replica is up to date or the full banlist is sent.
+         */
+        public List<Change> getChanges() {
+            return changes;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * BanBot: A Discord bot and an HTTP server that manages the Templex banlist.
+ * Copyright (C) 2018  vtcakavsmoace
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.templex.banbot.banlist;
+
+import lombok.NonNull;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The changes between two revisions of a banlist. Entries whose values changed appear as added, replacing the entry
+ * with the same UUID. Instances of this class are immutable.
+ * <p>
+ * A full diff carries no entries; it replaces everything, and consumers should read the current index instead. This
+ * is used for the initial load, so that a banlist is never held both as an index and as a list of added entries.
+ */
+public final class BanlistDiff {
+
+    /**
+     * The revision this diff leads to.
+     */
+    private final long revision;
+
+    /**
+     * The index of the revision before this diff.
+     */
+    private final BanlistIndex previous;
+
+    /**
+     * The index of the revision after this diff.
+     */
+    private final BanlistIndex current;
+
+    /**
+     * Entries added or changed by this diff.
+     */
+    private final List<BanEntry> added;
+
+    /**
+     * Entries removed by this diff.
+     */
+    private final List<BanEntry> removed;
+
+    /**
+     * Whether this diff replaces the whole banlist.
+     */
+    private final boolean full;
+
+    /**
+     * Main constructor for BanlistDiff.
+     *
+     * @param revision The revision this diff leads to.
+     * @param previous The index of the revision before this diff.
+     * @param current  The index of the revision after this diff.
+     * @param added    Entries added or changed by this diff.
+     * @param removed  Entries removed by this diff.
+     */
+    public BanlistDiff(long revision, @NonNull BanlistIndex previous, @NonNull BanlistIndex current,
+                       @NonNull List<BanEntry> added, @NonNull List<BanEntry> removed) {
+        this.revision = revision;
+        this.previous = previous;
+        this.current = current;
+        this.added = Collections.unmodifiableList(added);
+        this.removed = Collections.unmodifiableList(removed);
+        this.full = false;
+    }
+
+    /**
+     * Constructor for full diffs, which replace the whole banlist.
+     *
+     * @param revision The revision this diff leads to.
+     * @param previous The index of the revision before this diff.
+     * @param current  The index of the revision after this diff.
+     */
+    public BanlistDiff(long revision, @NonNull BanlistIndex previous, @NonNull BanlistIndex current) {
+        this.revision = revision;
+        this.previous = previous;
+        this.current = current;
+        this.added = Collections.emptyList();
+        this.removed = Collections.emptyList();
+        this.full = true;
+    }
+
+    /**
+     * Returns the revision this diff leads to.
+     *
+     * @return revision The revision.
+     */
+    public long getRevision() {
+        return revision;
+    }
+
+    /**
+     * Returns the index of the revision before this diff.
+     *
+     * @return previous The previous index.
+     */
+    public BanlistIndex getPrevious() {
+        return previous;
+    }
+
+    /**
+     * Returns the index of the revision after this diff.
+     *
+     * @return current The current index.
+     */
+    public BanlistIndex getCurrent() {
+        return current;
+    }
+
+    /**
+     * Returns the entries added or changed by this diff.
+     *
+     * @return added The added entries.
+     */
+    public List<BanEntry> getAdded() {
+        return added;
+    }
+
+    /**
+     * Returns the entries removed by this diff.
+     *
+     * @return removed The removed entries.
+     */
+    public List<BanEntry> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * Checks whether this diff replaces the whole banlist.
+     *
+     * @return full Whether this diff is full.
+     */
+    public boolean isFull() {
+        return full;
+    }
+
+    /**
+     * Checks whether this diff changes anything.
+     *
+     * @return empty Whether this diff is not full and no entries were added or removed.
+     */
+    public boolean isEmpty() {
+        return !full && added.isEmpty() && removed.isEmpty();
+    }
+}
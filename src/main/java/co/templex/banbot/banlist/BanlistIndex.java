@@ -0,0 +1,910 @@
+/*
+ * BanBot: A Discord bot and an HTTP server that manages the Templex banlist.
+ * Copyright (C) 2018  vtcakavsmoace
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.templex.banbot.banlist;
+
+import lombok.NonNull;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Memory-compact, immutable index over a banlist. Instances are built once through a {@link Builder} and then only
+ * read, so a new revision is published by swapping the reference to the index rather than by mutating it.
+ * <p>
+ * UUIDs are stored as primitive long pairs, names are packed into a single UTF-8 byte arena, dates are stored as epoch
+ * seconds along with the UTC offset they were written with, and reasons and sources are deduplicated into shared
+ * pools. UUID and (case-insensitive) name lookups go through open-addressing tables of entry positions. An entry costs
+ * roughly 75 bytes of heap.
+ */
+public final class BanlistIndex {
+
+    /**
+     * The date format used by the Minecraft server for the "created" and "expires" fields.
+     */
+    public static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss Z");
+
+    /**
+     * Date value used for absent or unparseable dates.
+     */
+    public static final long UNKNOWN = Long.MIN_VALUE;
+
+    /**
+     * Date value used for bans which never expire.
+     */
+    public static final long FOREVER = Long.MAX_VALUE;
+
+    /**
+     * An index containing no entries.
+     */
+    public static final BanlistIndex EMPTY = new Builder().build();
+
+    /**
+     * The number of entries within this index.
+     */
+    private final int size;
+
+    /**
+     * The UUIDs of all entries, stored as consecutive most/least significant bit pairs.
+     */
+    private final long[] uuids;
+
+    /**
+     * The UTF-8 encoded names of all entries, packed back to back.
+     */
+    private final byte[] names;
+
+    /**
+     * The start offset of each name within the name arena, followed by the end offset of the last name.
+     */
+    private final int[] nameOffsets;
+
+    /**
+     * The creation date of each entry, in epoch seconds.
+     */
+    private final long[] created;
+
+    /**
+     * The expiry date of each entry, in epoch seconds.
+     */
+    private final long[] expires;
+
+    /**
+     * The UTC offset each entry's creation date was written with, in minutes.
+     */
+    private final short[] createdOffsets;
+
+    /**
+     * The UTC offset each entry's expiry date was written with, in minutes.
+     */
+    private final short[] expiresOffsets;
+
+    /**
+     * The position of each entry's source within the string pool.
+     */
+    private final int[] sources;
+
+    /**
+     * The position of each entry's reason within the string pool.
+     */
+    private final int[] reasons;
+
+    /**
+     * The deduplicated sources and reasons of all entries.
+     */
+    private final String[] pool;
+
+    /**
+     * Open-addressing table of entry positions plus one, keyed by UUID. Zero marks an empty slot.
+     */
+    private final int[] uuidTable;
+
+    /**
+     * Open-addressing table of entry positions plus one, keyed by lowercase name. Zero marks an empty slot.
+     */
+    private final int[] nameTable;
+
+    /**
+     * Constructs an index from the arrays of a builder, dropping removed and superseded entries.
+     *
+     * @param builder The builder to take arrays from.
+     */
+    private BanlistIndex(Builder builder) {
+        BitSet live = builder.resolveLiveEntries();
+        this.size = live.cardinality();
+        if (size == builder.size) {
+            // nothing was removed or superseded, so the builder's arrays are taken over, trimmed only if oversized
+            this.uuids = trim(builder.uuids, size * 2);
+            this.nameOffsets = trim(builder.nameOffsets, size + 1);
+            this.names = trim(builder.names, nameOffsets[size]);
+            this.created = trim(builder.created, size);
+            this.expires = trim(builder.expires, size);
+            this.createdOffsets = trim(builder.createdOffsets, size);
+            this.expiresOffsets = trim(builder.expiresOffsets, size);
+            this.sources = trim(builder.sources, size);
+            this.reasons = trim(builder.reasons, size);
+        } else {
+            this.uuids = new long[size * 2];
+            this.nameOffsets = new int[size + 1];
+            this.created = new long[size];
+            this.expires = new long[size];
+            this.createdOffsets = new short[size];
+            this.expiresOffsets = new short[size];
+            this.sources = new int[size];
+            this.reasons = new int[size];
+            int nameLength = 0;
+            for (int from = live.nextSetBit(0); from >= 0; from = live.nextSetBit(from + 1)) {
+                nameLength += builder.nameOffsets[from + 1] - builder.nameOffsets[from];
+            }
+            this.names = new byte[nameLength];
+            int to = 0;
+            nameLength = 0;
+            for (int from = live.nextSetBit(0); from >= 0; from = live.nextSetBit(from + 1), to++) {
+                uuids[to * 2] = builder.uuids[from * 2];
+                uuids[to * 2 + 1] = builder.uuids[from * 2 + 1];
+                int start = builder.nameOffsets[from], length = builder.nameOffsets[from + 1] - start;
+                System.arraycopy(builder.names, start, names, nameLength, length);
+                nameOffsets[to] = nameLength;
+                nameLength += length;
+                created[to] = builder.created[from];
+                expires[to] = builder.expires[from];
+                createdOffsets[to] = builder.createdOffsets[from];
+                expiresOffsets[to] = builder.expiresOffsets[from];
+                sources[to] = builder.sources[from];
+                reasons[to] = builder.reasons[from];
+            }
+            nameOffsets[size] = nameLength;
+        }
+        this.pool = new String[builder.pool.size()];
+        for (Map.Entry<String, Integer> entry : builder.pool.entrySet()) {
+            pool[entry.getValue()] = entry.getKey();
+        }
+        this.uuidTable = new int[tableCapacity(size)];
+        this.nameTable = new int[tableCapacity(size)];
+        for (int i = 0; i < size; i++) {
+            insert(uuidTable, hashUuid(uuids[i * 2], uuids[i * 2 + 1]), i);
+            insert(nameTable, hashName(names, nameOffsets[i], nameOffsets[i + 1]), i);
+        }
+    }
+
+    /**
+     * Returns the number of entries within this index.
+     *
+     * @return size The number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Finds the position of the entry with the passed UUID.
+     *
+     * @param uuid The UUID to look up.
+     * @return position The position of the entry, or -1 if the UUID is not banned.
+     */
+    public int indexOf(@NonNull UUID uuid) {
+        return indexOf(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    /**
+     * Finds the position of the entry with the passed UUID.
+     *
+     * @param msb The most significant bits of the UUID.
+     * @param lsb The least significant bits of the UUID.
+     * @return position The position of the entry, or -1 if the UUID is not banned.
+     */
+    public int indexOf(long msb, long lsb) {
+        int mask = uuidTable.length - 1;
+        for (int slot = hashUuid(msb, lsb) & mask; uuidTable[slot] != 0; slot = (slot + 1) & mask) {
+            int i = uuidTable[slot] - 1;
+            if (uuids[i * 2] == msb && uuids[i * 2 + 1] == lsb) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the position of the entry with the passed name. Names are compared ignoring ASCII case, as the Minecraft
+     * server does.
+     *
+     * @param name The name to look up.
+     * @return position The position of the entry, or -1 if no entry has the name.
+     */
+    public int indexOfName(@NonNull String name) {
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        int mask = nameTable.length - 1;
+        for (int slot = hashName(key, 0, key.length) & mask; nameTable[slot] != 0; slot = (slot + 1) & mask) {
+            int i = nameTable[slot] - 1;
+            if (namesEqual(i, key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the UUID of the entry at the passed position.
+     *
+     * @param index The position of the entry.
+     * @return uuid The UUID of the entry.
+     */
+    public UUID getUuid(int index) {
+        return new UUID(uuids[index * 2], uuids[index * 2 + 1]);
+    }
+
+    /**
+     * Returns the most significant bits of the UUID of the entry at the passed position.
+     *
+     * @param index The position of the entry.
+     * @return msb The most significant bits.
+     */
+    public long getMostSignificantBits(int index) {
+        return uuids[index * 2];
+    }
+
+    /**
+     * Returns the least significant bits of the UUID of the entry at the passed position.
+     *
+     * @param index The position of the entry.
+     * @return lsb The least significant bits.
+     */
+    public long getLeastSignificantBits(int index) {
+        return uuids[index * 2 + 1];
+    }
+
+    /**
+     * Returns the creation date of the entry at the passed position.
+     *
+     * @param index The position of the entry.
+     * @return created The creation date in epoch seconds, or {@link #UNKNOWN}.
+     */
+    public long getCreated(int index) {
+        return created[index];
+    }
+
+    /**
+     * Returns the expiry date of the entry at the passed position.
+     *
+     * @param index The position of the entry.
+     * @return expires The expiry date in epoch seconds, {@link #FOREVER} or {@link #UNKNOWN}.
+     */
+    public long getExpires(int index) {
+        return expires[index];
+    }
+
+    /**
+     * Materializes the entry at the passed position. Dates are rendered with the UTC offset they were written with.
+     *
+     * @param index The position of the entry.
+     * @return entry The entry.
+     */
+    public BanEntry get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(Integer.toString(index));
+        }
+        return new BanEntry(
+                getUuid(index),
+                new String(names, nameOffsets[index], nameOffsets[index + 1] - nameOffsets[index], StandardCharsets.UTF_8),
+                formatDate(created[index], createdOffsets[index]),
+                pool[sources[index]],
+                formatDate(expires[index], expiresOffsets[index]),
+                pool[reasons[index]]
+        );
+    }
+
+    /**
+     * Checks whether the entry at the passed position holds the same values as the passed entry, without
+     * materializing it. Dates are compared by instant and UTC offset.
+     *
+     * @param index The position of the entry.
+     * @param entry The entry to compare against.
+     * @return equal Whether the entries are equal.
+     */
+    public boolean entryEquals(int index, @NonNull BanEntry entry) {
+        return uuids[index * 2] == entry.getUuid().getMostSignificantBits()
+                && uuids[index * 2 + 1] == entry.getUuid().getLeastSignificantBits()
+                && created[index] == parseDate(entry.getCreated())
+                && expires[index] == parseDate(entry.getExpires())
+                && createdOffsets[index] == parseOffset(entry.getCreated())
+                && expiresOffsets[index] == parseOffset(entry.getExpires())
+                && Objects.equals(pool[sources[index]], entry.getSource())
+                && Objects.equals(pool[reasons[index]], entry.getReason())
+                && namesEqualExactly(index, entry.getName() == null ? "" : entry.getName());
+    }
+
+    /**
+     * Checks whether the entry at the passed position holds the same values as an entry of another index, without
+     * materializing either.
+     *
+     * @param index    The position of the entry within this index.
+     * @param other    The other index.
+     * @param position The position of the entry within the other index.
+     * @return equal Whether the entries are equal.
+     */
+    public boolean entryEquals(int index, @NonNull BanlistIndex other, int position) {
+        int start = nameOffsets[index], length = nameOffsets[index + 1] - start;
+        int otherStart = other.nameOffsets[position];
+        if (other.nameOffsets[position + 1] - otherStart != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (names[start + i] != other.names[otherStart + i]) {
+                return false;
+            }
+        }
+        return uuids[index * 2] == other.uuids[position * 2]
+                && uuids[index * 2 + 1] == other.uuids[position * 2 + 1]
+                && created[index] == other.created[position]
+                && expires[index] == other.expires[position]
+                && createdOffsets[index] == other.createdOffsets[position]
+                && expiresOffsets[index] == other.expiresOffsets[position]
+                && Objects.equals(pool[sources[index]], other.pool[other.sources[position]])
+                && Objects.equals(pool[reasons[index]], other.pool[other.reasons[position]]);
+    }
+
+    /**
+     * Creates a binary snapshot of the UUIDs within this index.
+     *
+     * @param revision The revision to tag the snapshot with.
+     * @return snapshot The snapshot.
+     */
+    public BanlistSnapshot toSnapshot(long revision) {
+        return new BanlistSnapshot(revision, uuids);
+    }
+
+    /**
+     * Estimates the heap occupied by this index, excluding object headers.
+     *
+     * @return bytes The estimated heap usage in bytes.
+     */
+    public long estimateMemory() {
+        long bytes = uuids.length * 8L + names.length + nameOffsets.length * 4L + created.length * 8L
+                + expires.length * 8L + createdOffsets.length * 2L + expiresOffsets.length * 2L + sources.length * 4L + reasons.length * 4L
+                + uuidTable.length * 4L + nameTable.length * 4L;
+        for (String s : pool) {
+            bytes += s == null ? 0 : 40 + s.length() * 2L;
+        }
+        return bytes;
+    }
+
+    /**
+     * Checks whether the name of the entry at the passed position equals the passed key, ignoring ASCII case.
+     *
+     * @param index The position of the entry.
+     * @param key   The UTF-8 encoded name to compare against.
+     * @return equal Whether the names are equal.
+     */
+    private boolean namesEqual(int index, byte[] key) {
+        int start = nameOffsets[index], length = nameOffsets[index + 1] - start;
+        if (length != key.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (lower(names[start + i]) != lower(key[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the name of the entry at the passed position equals the passed name, respecting case.
+     *
+     * @param index The position of the entry.
+     * @param name  The name to compare against.
+     * @return equal Whether the names are equal.
+     */
+    private boolean namesEqualExactly(int index, String name) {
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        int start = nameOffsets[index];
+        if (nameOffsets[index + 1] - start != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (names[start + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses a date as written by the Minecraft server.
+     *
+     * @param date The date to parse. May be null.
+     * @return seconds The date in epoch seconds, {@link #FOREVER} or {@link #UNKNOWN}.
+     */
+    public static long parseDate(String date) {
+        if (date == null) {
+            return UNKNOWN;
+        }
+        if (date.equals("forever")) {
+            return FOREVER;
+        }
+        long fast = parseDateFast(date);
+        if (fast != UNKNOWN) {
+            return fast;
+        }
+        try {
+            return OffsetDateTime.parse(date, DATE_FORMAT).toEpochSecond();
+        } catch (DateTimeParseException e) {
+            return UNKNOWN;
+        }
+    }
+
+    /**
+     * Parses a date of the exact form "yyyy-MM-dd HH:mm:ss +hhmm" without going through a DateTimeFormatter, which
+     * dominates the cost of loading large banlists otherwise.
+     *
+     * @param date The date to parse.
+     * @return seconds The date in epoch seconds, or {@link #UNKNOWN} if the date is of any other form.
+     */
+    private static long parseDateFast(String date) {
+        if (date.length() != 25 || date.charAt(4) != '-' || date.charAt(7) != '-' || date.charAt(10) != ' '
+                || date.charAt(13) != ':' || date.charAt(16) != ':' || date.charAt(19) != ' ') {
+            return UNKNOWN;
+        }
+        int year = digits(date, 0, 4), month = digits(date, 5, 2), day = digits(date, 8, 2);
+        int hour = digits(date, 11, 2), minute = digits(date, 14, 2), second = digits(date, 17, 2);
+        int offsetHours = digits(date, 21, 2), offsetMinutes = digits(date, 23, 2);
+        char sign = date.charAt(20);
+        if ((year | month | day | hour | minute | second | offsetHours | offsetMinutes) < 0 || (sign != '+' && sign != '-')
+                || month < 1 || month > 12 || day < 1 || day > 28 && day > YearMonth.of(year, month).lengthOfMonth()
+                || hour > 23 || minute > 59 || second > 59 || offsetMinutes > 59) {
+            return UNKNOWN;
+        }
+        long offset = (offsetHours * 3600L + offsetMinutes * 60L) * (sign == '-' ? -1 : 1);
+        return LocalDate.of(year, month, day).toEpochDay() * 86400L + hour * 3600L + minute * 60L + second - offset;
+    }
+
+    /**
+     * Parses the UTC offset of a date as written by the Minecraft server.
+     *
+     * @param date The date to parse. May be null.
+     * @return minutes The offset in minutes, or 0 if the date is absent, "forever" or unparseable.
+     */
+    public static short parseOffset(String date) {
+        if (date == null || date.equals("forever")) {
+            return 0;
+        }
+        if (date.length() == 25 && date.charAt(19) == ' ') {
+            // the offset of the fast form is read in place; the date itself is validated by parseDate
+            int hours = digits(date, 21, 2), minutes = digits(date, 23, 2);
+            char sign = date.charAt(20);
+            if (hours >= 0 && hours <= 18 && minutes >= 0 && minutes <= 59 && (sign == '+' || sign == '-')) {
+                return (short) ((hours * 60 + minutes) * (sign == '-' ? -1 : 1));
+            }
+        }
+        try {
+            return (short) (OffsetDateTime.parse(date, DATE_FORMAT).getOffset().getTotalSeconds() / 60);
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Parses a fixed-width run of decimal digits.
+     *
+     * @param s      The string containing the digits.
+     * @param start  The offset of the first digit.
+     * @param length The number of digits.
+     * @return value The parsed value, or -1 if a non-digit is present.
+     */
+    private static int digits(String s, int start, int length) {
+        int value = 0;
+        for (int i = start; i < start + length; i++) {
+            int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Formats a date as written by the Minecraft server.
+     *
+     * @param seconds The date in epoch seconds, {@link #FOREVER} or {@link #UNKNOWN}.
+     * @param offset  The UTC offset to render the date with, in minutes.
+     * @return date The formatted date, or null if unknown.
+     */
+    public static String formatDate(long seconds, int offset) {
+        if (seconds == UNKNOWN) {
+            return null;
+        }
+        if (seconds == FOREVER) {
+            return "forever";
+        }
+        return DATE_FORMAT.format(Instant.ofEpochSecond(seconds).atOffset(ZoneOffset.ofTotalSeconds(offset * 60)));
+    }
+
+    /**
+     * Trims an array to the passed length, copying only if it is longer.
+     *
+     * @param array  The array to trim.
+     * @param length The length to trim to.
+     * @return trimmed The passed array, or a trimmed copy of it.
+     */
+    private static long[] trim(long[] array, int length) {
+        return array.length == length ? array : Arrays.copyOf(array, length);
+    }
+
+    /**
+     * Trims an array to the passed length, copying only if it is longer.
+     *
+     * @param array  The array to trim.
+     * @param length The length to trim to.
+     * @return trimmed The passed array, or a trimmed copy of it.
+     */
+    private static short[] trim(short[] array, int length) {
+        return array.length == length ? array : Arrays.copyOf(array, length);
+    }
+
+    /**
+     * Trims an array to the passed length, copying only if it is longer.
+     *
+     * @param array  The array to trim.
+     * @param length The length to trim to.
+     * @return trimmed The passed array, or a trimmed copy of it.
+     */
+    private static int[] trim(int[] array, int length) {
+        return array.length == length ? array : Arrays.copyOf(array, length);
+    }
+
+    /**
+     * Trims an array to the passed length, copying only if it is longer.
+     *
+     * @param array  The array to trim.
+     * @param length The length to trim to.
+     * @return trimmed The passed array, or a trimmed copy of it.
+     */
+    private static byte[] trim(byte[] array, int length) {
+        return array.length == length ? array : Arrays.copyOf(array, length);
+    }
+
+    /**
+     * Computes the table capacity for the passed number of entries, keeping the load factor at or below one half.
+     *
+     * @param size The number of entries.
+     * @return capacity A power of two.
+     */
+    private static int tableCapacity(int size) {
+        return Integer.highestOneBit(Math.max(2, size) * 2 - 1) << 1;
+    }
+
+    /**
+     * Inserts an entry position into an open-addressing table.
+     *
+     * @param table The table to insert into.
+     * @param hash  The hash of the entry's key.
+     * @param index The position of the entry.
+     */
+    private static void insert(int[] table, int hash, int index) {
+        int mask = table.length - 1, slot = hash & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = index + 1;
+    }
+
+    /**
+     * Hashes a UUID for table placement.
+     *
+     * @param msb The most significant bits of the UUID.
+     * @param lsb The least significant bits of the UUID.
+     * @return hash The hash.
+     */
+    private static int hashUuid(long msb, long lsb) {
+        return (int) BanlistSnapshot.mix(msb ^ Long.rotateLeft(lsb, 32));
+    }
+
+    /**
+     * Hashes a UTF-8 encoded name for table placement, ignoring ASCII case.
+     *
+     * @param bytes The bytes containing the name.
+     * @param start The start offset of the name.
+     * @param end   The end offset of the name.
+     * @return hash The hash.
+     */
+    private static int hashName(byte[] bytes, int start, int end) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ lower(bytes[i])) * 0x100000001B3L;
+        }
+        return (int) BanlistSnapshot.mix(hash);
+    }
+
+    /**
+     * Lowercases a single ASCII byte, leaving all other bytes untouched.
+     *
+     * @param b The byte to lowercase.
+     * @return lower The lowercase byte.
+     */
+    private static byte lower(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    /**
+     * Builder for BanlistIndex. Entries with a UUID already present replace the earlier entry, and removals only affect
+     * entries added before them. Builders are not thread safe and should be discarded after {@link #build()}.
+     */
+    public static final class Builder {
+
+        /**
+         * The number of entries added so far, including superseded ones.
+         */
+        private int size;
+
+        /**
+         * The UUIDs of all entries, stored as consecutive most/least significant bit pairs.
+         */
+        private long[] uuids;
+
+        /**
+         * The UTF-8 encoded names of all entries, packed back to back.
+         */
+        private byte[] names;
+
+        /**
+         * The start offset of each name within the name arena, followed by the end offset of the last name.
+         */
+        private int[] nameOffsets;
+
+        /**
+         * The creation date of each entry, in epoch seconds.
+         */
+        private long[] created;
+
+        /**
+         * The expiry date of each entry, in epoch seconds.
+         */
+        private long[] expires;
+
+        /**
+         * The UTC offset each entry's creation date was written with, in minutes.
+         */
+        private short[] createdOffsets;
+
+        /**
+         * The UTC offset each entry's expiry date was written with, in minutes.
+         */
+        private short[] expiresOffsets;
+
+        /**
+         * The position of each entry's source within the string pool.
+         */
+        private int[] sources;
+
+        /**
+         * The position of each entry's reason within the string pool.
+         */
+        private int[] reasons;
+
+        /**
+         * The deduplicated sources and reasons, mapped to their pool positions.
+         */
+        private final Map<String, Integer> pool = new HashMap<>();
+
+        /**
+         * Removed UUIDs, mapped to the number of entries added at the time of their removal.
+         */
+        private final Map<UUID, Integer> removals = new HashMap<>();
+
+        /**
+         * Main constructor for Builder, sized for a small banlist.
+         */
+        public Builder() {
+            this(16);
+        }
+
+        /**
+         * Constructor for Builder, sized for the passed number of entries. Building an index of exactly this many
+         * entries requires no intermediate copies.
+         *
+         * @param expectedEntries The expected number of entries.
+         */
+        public Builder(int expectedEntries) {
+            int capacity = Math.max(1, expectedEntries);
+            uuids = new long[capacity * 2];
+            names = new byte[capacity * 16];
+            nameOffsets = new int[capacity + 1];
+            created = new long[capacity];
+            expires = new long[capacity];
+            createdOffsets = new short[capacity];
+            expiresOffsets = new short[capacity];
+            sources = new int[capacity];
+            reasons = new int[capacity];
+        }
+
+        /**
+         * Adds an entry to the index being built.
+         *
+         * @param entry The entry to add.
+         * @return builder This builder.
+         */
+        public Builder add(@NonNull BanEntry entry) {
+            ensureCapacity(size + 1);
+            byte[] name = entry.getName() == null ? new byte[0] : entry.getName().getBytes(StandardCharsets.UTF_8);
+            int nameLength = nameOffsets[size];
+            if (nameLength + name.length > names.length) {
+                names = Arrays.copyOf(names, Math.max(names.length + (names.length >> 1), nameLength + name.length));
+            }
+            System.arraycopy(name, 0, names, nameLength, name.length);
+            nameOffsets[size + 1] = nameLength + name.length;
+            uuids[size * 2] = entry.getUuid().getMostSignificantBits();
+            uuids[size * 2 + 1] = entry.getUuid().getLeastSignificantBits();
+            created[size] = parseDate(entry.getCreated());
+            expires[size] = parseDate(entry.getExpires());
+            createdOffsets[size] = parseOffset(entry.getCreated());
+            expiresOffsets[size] = parseOffset(entry.getExpires());
+            sources[size] = intern(entry.getSource());
+            reasons[size] = intern(entry.getReason());
+            size++;
+            return this;
+        }
+
+        /**
+         * Adds every entry of an existing index, preserving its order.
+         *
+         * @param index The index to copy.
+         * @return builder This builder.
+         */
+        public Builder addAll(@NonNull BanlistIndex index) {
+            ensureCapacity(size + index.size());
+            for (int i = 0; i < index.size(); i++) {
+                add(index, i);
+            }
+            return this;
+        }
+
+        /**
+         * Adds a single entry of an existing index. The entry is copied field by field rather than materialized, so
+         * neither its name nor its dates are decoded.
+         *
+         * @param index    The index to copy from.
+         * @param position The position of the entry within the index.
+         * @return builder This builder.
+         */
+        public Builder add(@NonNull BanlistIndex index, int position) {
+            if (position < 0 || position >= index.size) {
+                throw new IndexOutOfBoundsException(Integer.toString(position));
+            }
+            ensureCapacity(size + 1);
+            int start = index.nameOffsets[position], length = index.nameOffsets[position + 1] - start;
+            int nameLength = nameOffsets[size];
+            if (nameLength + length > names.length) {
+                names = Arrays.copyOf(names, Math.max(names.length + (names.length >> 1), nameLength + length));
+            }
+            System.arraycopy(index.names, start, names, nameLength, length);
+            nameOffsets[size + 1] = nameLength + length;
+            uuids[size * 2] = index.uuids[position * 2];
+            uuids[size * 2 + 1] = index.uuids[position * 2 + 1];
+            created[size] = index.created[position];
+            expires[size] = index.expires[position];
+            createdOffsets[size] = index.createdOffsets[position];
+            expiresOffsets[size] = index.expiresOffsets[position];
+            sources[size] = intern(index.pool[index.sources[position]]);
+            reasons[size] = intern(index.pool[index.reasons[position]]);
+            size++;
+            return this;
+        }
+
+        /**
+         * Removes the entry with the passed UUID, if one has been added.
+         *
+         * @param uuid The UUID of the entry to remove.
+         * @return builder This builder.
+         */
+        public Builder remove(@NonNull UUID uuid) {
+            removals.put(uuid, size);
+            return this;
+        }
+
+        /**
+         * Builds the index. The builder should not be used afterwards.
+         *
+         * @return index The built index.
+         */
+        public BanlistIndex build() {
+            return new BanlistIndex(this);
+        }
+
+        /**
+         * Determines which added entries survive into the built index: those neither removed afterwards nor
+         * superseded by a later entry with the same UUID.
+         *
+         * @return live The positions of surviving entries.
+         */
+        private BitSet resolveLiveEntries() {
+            BitSet live = new BitSet(size);
+            live.set(0, size);
+            int[] table = new int[tableCapacity(size)];
+            int mask = table.length - 1;
+            for (int i = 0; i < size; i++) {
+                long msb = uuids[i * 2], lsb = uuids[i * 2 + 1];
+                if (!removals.isEmpty()) {
+                    Integer removedAt = removals.get(new UUID(msb, lsb));
+                    if (removedAt != null && removedAt > i) {
+                        live.clear(i);
+                        continue;
+                    }
+                }
+                int slot = hashUuid(msb, lsb) & mask;
+                while (table[slot] != 0) {
+                    int previous = table[slot] - 1;
+                    if (uuids[previous * 2] == msb && uuids[previous * 2 + 1] == lsb) {
+                        live.clear(previous);
+                        break;
+                    }
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = i + 1;
+            }
+            return live;
+        }
+
+        /**
+         * Grows all per-entry arrays to hold at least the passed number of entries.
+         *
+         * @param capacity The number of entries to hold.
+         */
+        private void ensureCapacity(int capacity) {
+            if (capacity <= created.length) {
+                return;
+            }
+            int grown = Math.max(capacity, created.length + (created.length >> 1));
+            uuids = Arrays.copyOf(uuids, grown * 2);
+            nameOffsets = Arrays.copyOf(nameOffsets, grown + 1);
+            created = Arrays.copyOf(created, grown);
+            expires = Arrays.copyOf(expires, grown);
+            createdOffsets = Arrays.copyOf(createdOffsets, grown);
+            expiresOffsets = Arrays.copyOf(expiresOffsets, grown);
+            sources = Arrays.copyOf(sources, grown);
+            reasons = Arrays.copyOf(reasons, grown);
+        }
+
+        /**
+         * Adds a string to the pool, if not already present.
+         *
+         * @param value The string to add. May be null.
+         * @return position The position of the string within the pool.
+         */
+        private int intern(String value) {
+            Integer position = pool.get(value);
+            if (position == null) {
+                position = pool.size();
+                pool.put(value, position);
+            }
+            return position;
+        }
+    }
+}
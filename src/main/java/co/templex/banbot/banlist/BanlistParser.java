@@ -0,0 +1,544 @@
+/*
+ * BanBot: A Discord bot and an HTTP server that manages the Templex banlist.
+ * Copyright (C) 2018  vtcakavsmoace
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.templex.banbot.banlist;
+
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Streaming parser for the banned-players.json and banned-ips.json formats written by the Minecraft server. The banlist is read from a
+ * byte channel through a fixed-size buffer and decoded as UTF-8, and each entry is handed to a consumer as soon as it
+ * has been parsed, so heap usage does not depend on the size of the banlist.
+ * <p>
+ * Only the structure used by those files (an array of flat objects) is understood; nested values are skipped. Entries
+ * without a valid UUID or address are skipped with a warning, while structural errors abort the parse.
+ */
+public class BanlistParser {
+
+    /**
+     * The logger instance for all instances of BanlistParser. This serves solely for debug purposes.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(BanlistParser.class);
+
+    /**
+     * The size of the read buffer.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The fields collected from each entry of banned-players.json.
+     */
+    private static final String[] PLAYER_FIELDS = {"uuid", "name", "created", "source", "expires", "reason"};
+
+    /**
+     * The fields collected from each entry of banned-ips.json.
+     */
+    private static final String[] IP_FIELDS = {"ip", "created", "source", "expires", "reason"};
+
+    /**
+     * The fields collected from each change of a change feed, which are those of a banlist entry and its change kind.
+     */
+    private static final String[] CHANGE_FIELDS = {"uuid", "name", "created", "source", "expires", "reason", "change"};
+
+    /**
+     * The change kind marking a removed entry within a change feed.
+     */
+    public static final String REMOVED = "removed";
+
+    /**
+     * The channel being parsed.
+     */
+    private final ReadableByteChannel channel;
+
+    /**
+     * The read buffer. Bytes are accessed through the backing array, as ByteBuffer accessors are measurably slower
+     * on the per-byte paths of this parser.
+     */
+    private final byte[] bytes = new byte[BUFFER_SIZE];
+
+    /**
+     * A view of the read buffer for channel reads.
+     */
+    private final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+    /**
+     * The position of the next unread byte within the read buffer.
+     */
+    private int pos;
+
+    /**
+     * The number of valid bytes within the read buffer.
+     */
+    private int limit;
+
+    /**
+     * The number of bytes consumed before the current buffer contents, used for error reporting.
+     */
+    private long consumed;
+
+    /**
+     * Whether the end of the channel has been reached.
+     */
+    private boolean eof;
+
+    /**
+     * Hidden constructor. Instances are only created by {@link #parse(ReadableByteChannel, Consumer)}.
+     *
+     * @param channel The channel to parse.
+     */
+    private BanlistParser(ReadableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Parses the banlist read from the passed channel, handing each valid entry to the consumer in file order. The
+     * channel is not closed.
+     *
+     * @param channel  The channel to read the banlist from.
+     * @param consumer The consumer of parsed entries.
+     * @return skipped The number of entries skipped for lacking a valid UUID.
+     * @throws IOException If the channel fails or the banlist is malformed.
+     */
+    public static int parse(@NonNull ReadableByteChannel channel, @NonNull Consumer<BanEntry> consumer) throws IOException {
+        return new BanlistParser(channel).parseArray(PLAYER_FIELDS, BanlistParser::toBanEntry, consumer);
+    }
+
+    /**
+     * Parses the IP banlist (banned-ips.json) read from the passed channel, handing each valid entry to the consumer
+     * in file order. The channel is not closed.
+     *
+     * @param channel  The channel to read the IP banlist from.
+     * @param consumer The consumer of parsed entries.
+     * @return skipped The number of entries skipped for lacking a valid address.
+     * @throws IOException If the channel fails or the IP banlist is malformed.
+     */
+    public static int parseIpBans(@NonNull ReadableByteChannel channel, @NonNull Consumer<IpBanEntry> consumer) throws IOException {
+        return new BanlistParser(channel).parseArray(IP_FIELDS, BanlistParser::toIpBanEntry, consumer);
+    }
+
+    /**
+     * Parses a change feed read from the passed channel, as written by {@link BanlistWriter#appendRemoval}. A change
+     * feed is a banlist in which removed entries carry only their UUID and a "change" field of "removed". Changes are
+     * handed to the consumers in feed order, which must be kept when applying them. The channel is not closed.
+     *
+     * @param channel The channel to read the change feed from.
+     * @param added   The consumer of added or changed entries.
+     * @param removed The consumer of removed UUIDs.
+     * @return skipped The number of changes skipped for lacking a valid UUID.
+     * @throws IOException If the channel fails or the change feed is malformed.
+     */
+    public static int parseChanges(@NonNull ReadableByteChannel channel, @NonNull Consumer<BanEntry> added,
+                                   @NonNull Consumer<UUID> removed) throws IOException {
+        return new BanlistParser(channel).parseArray(CHANGE_FIELDS, (values, start) -> {
+            BanEntry entry = toBanEntry(values, start);
+            return entry == null ? null : (Runnable) () -> {
+                if (REMOVED.equals(values[6])) {
+                    removed.accept(entry.getUuid());
+                } else {
+                    added.accept(entry);
+                }
+            };
+        }, Runnable::run);
+    }
+
+    /**
+     * Creates a player ban entry from parsed field values.
+     *
+     * @param values The values of {@link #PLAYER_FIELDS}.
+     * @param start  The offset of the entry, for warnings.
+     * @return entry The entry, or null if it lacks a valid UUID.
+     */
+    private static BanEntry toBanEntry(String[] values, long start) {
+        if (values[0] == null) {
+            logger.warn(String.format("Skipping banlist entry without a UUID at offset %d.", start));
+            return null;
+        }
+        try {
+            return new BanEntry(UUID.fromString(values[0]), values[1], values[2], values[3], values[4], values[5]);
+        } catch (IllegalArgumentException e) {
+            logger.warn(String.format("Skipping banlist entry with invalid UUID \"%s\" at offset %d.", values[0], start));
+            return null;
+        }
+    }
+
+    /**
+     * Creates an IP ban entry from parsed field values.
+     *
+     * @param values The values of {@link #IP_FIELDS}.
+     * @param start  The offset of the entry, for warnings.
+     * @return entry The entry, or null if it lacks a valid address.
+     */
+    private static IpBanEntry toIpBanEntry(String[] values, long start) {
+        if (values[0] == null) {
+            logger.warn(String.format("Skipping IP banlist entry without an address at offset %d.", start));
+            return null;
+        }
+        try {
+            return new IpBanEntry(IpRange.parse(values[0]), values[1], values[2], values[3], values[4]);
+        } catch (IllegalArgumentException e) {
+            logger.warn(String.format("Skipping IP banlist entry with invalid address \"%s\" at offset %d.", values[0], start));
+            return null;
+        }
+    }
+
+    /**
+     * Parses the top level array of a banlist.
+     *
+     * @param keys     The keys of the string fields to collect from each entry.
+     * @param factory  The factory creating entries from collected field values.
+     * @param consumer The consumer of parsed entries.
+     * @param <T>      The type of entry.
+     * @return skipped The number of skipped entries.
+     * @throws IOException If the channel fails or the banlist is malformed.
+     */
+    private <T> int parseArray(String[] keys, EntryFactory<T> factory, Consumer<T> consumer) throws IOException {
+        int skipped = 0;
+        skipByteOrderMark();
+        skipWhitespace();
+        if (atEnd()) {
+            return 0; // an empty file is treated as an empty banlist
+        }
+        expect('[');
+        skipWhitespace();
+        if (consumeIf(']')) {
+            return 0;
+        }
+        do {
+            skipWhitespace();
+            long start = position();
+            T entry = factory.create(parseEntry(keys), start);
+            if (entry == null) {
+                skipped++;
+            } else {
+                consumer.accept(entry);
+            }
+            skipWhitespace();
+        } while (consumeIf(','));
+        expect(']');
+        return skipped;
+    }
+
+    /**
+     * Parses a single banlist entry, collecting the values of the passed keys. Values of other keys and non-string
+     * values are skipped.
+     *
+     * @param keys The keys of the string fields to collect.
+     * @return values The collected values, in key order. Absent values are null.
+     * @throws IOException If the channel fails or the entry is malformed.
+     */
+    private String[] parseEntry(String[] keys) throws IOException {
+        String[] values = new String[keys.length];
+        expect('{');
+        skipWhitespace();
+        if (!consumeIf('}')) {
+            do {
+                skipWhitespace();
+                String key = parseString();
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                if (peek() != '"') {
+                    skipValue();
+                } else {
+                    String value = parseString();
+                    for (int i = 0; i < keys.length; i++) {
+                        if (keys[i].equals(key)) {
+                            values[i] = value;
+                            break;
+                        }
+                    }
+                }
+                skipWhitespace();
+            } while (consumeIf(','));
+            expect('}');
+        }
+        return values;
+    }
+
+    /**
+     * Parses a string literal, resolving all escape sequences and decoding UTF-8.
+     *
+     * @return value The unescaped string.
+     * @throws IOException If the channel fails or the literal is malformed.
+     */
+    private String parseString() throws IOException {
+        expect('"');
+        int end = pos;
+        while (end < limit && bytes[end] != '"' && bytes[end] != '\\') {
+            end++;
+        }
+        if (end < limit && bytes[end] == '"') {
+            // fast path for strings without escapes lying wholly within the buffer, which is nearly all of them
+            String value = new String(bytes, pos, end - pos, StandardCharsets.UTF_8);
+            pos = end + 1;
+            return value;
+        }
+        StringBuilder string = new StringBuilder(64);
+        while (true) {
+            int b = next();
+            if (b == '"') {
+                return string.toString();
+            }
+            if (b >= 0x80) {
+                string.appendCodePoint(decodeMultiByte(b));
+                continue;
+            }
+            if (b != '\\') {
+                string.append((char) b);
+                continue;
+            }
+            b = next();
+            switch (b) {
+                case 'b':
+                    string.append('\b');
+                    break;
+                case 'f':
+                    string.append('\f');
+                    break;
+                case 'n':
+                    string.append('\n');
+                    break;
+                case 'r':
+                    string.append('\r');
+                    break;
+                case 't':
+                    string.append('\t');
+                    break;
+                case 'u':
+                    int c = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(next(), 16);
+                        if (digit < 0) {
+                            throw error("Invalid unicode escape");
+                        }
+                        c = (c << 4) | digit;
+                    }
+                    string.append((char) c);
+                    break;
+                default:
+                    string.append((char) b);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Decodes the remainder of a multi-byte UTF-8 sequence.
+     *
+     * @param lead The lead byte of the sequence.
+     * @return codePoint The decoded code point.
+     * @throws IOException If the channel fails or the sequence is malformed.
+     */
+    private int decodeMultiByte(int lead) throws IOException {
+        int length, codePoint;
+        if ((lead & 0xE0) == 0xC0) {
+            length = 1;
+            codePoint = lead & 0x1F;
+        } else if ((lead & 0xF0) == 0xE0) {
+            length = 2;
+            codePoint = lead & 0x0F;
+        } else if ((lead & 0xF8) == 0xF0) {
+            length = 3;
+            codePoint = lead & 0x07;
+        } else {
+            throw error("Invalid UTF-8 sequence");
+        }
+        for (int i = 0; i < length; i++) {
+            int b = next();
+            if ((b & 0xC0) != 0x80) {
+                throw error("Invalid UTF-8 sequence");
+            }
+            codePoint = (codePoint << 6) | (b & 0x3F);
+        }
+        if (codePoint > Character.MAX_CODE_POINT) {
+            throw error("Invalid UTF-8 sequence");
+        }
+        return codePoint;
+    }
+
+    /**
+     * Skips a non-string value, including nested arrays and objects.
+     *
+     * @throws IOException If the channel fails or the value is malformed.
+     */
+    private void skipValue() throws IOException {
+        int depth = 0;
+        while (true) {
+            int b = peek();
+            if (b == '"') {
+                parseString();
+                continue;
+            }
+            if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']' || b == ',') {
+                if (depth == 0) {
+                    return;
+                }
+                if (b != ',') {
+                    depth--;
+                }
+            }
+            pos++;
+        }
+    }
+
+    /**
+     * Skips a UTF-8 byte order mark, if present at the start of the channel.
+     *
+     * @throws IOException If the channel fails.
+     */
+    private void skipByteOrderMark() throws IOException {
+        if (!atEnd() && peek() == 0xEF) {
+            next();
+            if (next() != 0xBB || next() != 0xBF) {
+                throw error("Invalid byte order mark");
+            }
+        }
+    }
+
+    /**
+     * Skips all whitespace at the current position.
+     *
+     * @throws IOException If the channel fails.
+     */
+    private void skipWhitespace() throws IOException {
+        while (!atEnd()) {
+            byte b = bytes[pos];
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    /**
+     * Consumes the passed character if it is present at the current position.
+     *
+     * @param c The character to consume.
+     * @return consumed Whether the character was consumed.
+     * @throws IOException If the channel fails or has ended.
+     */
+    private boolean consumeIf(char c) throws IOException {
+        if (peek() == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Consumes the passed character, failing if it is not present at the current position.
+     *
+     * @param c The character to consume.
+     * @throws IOException If a different character is present.
+     */
+    private void expect(char c) throws IOException {
+        if (next() != c) {
+            throw error("Expected '" + c + "'");
+        }
+    }
+
+    /**
+     * Checks whether the channel has been fully consumed, reading more bytes if the buffer is exhausted.
+     *
+     * @return end Whether no bytes remain.
+     * @throws IOException If the channel fails.
+     */
+    private boolean atEnd() throws IOException {
+        while (pos == limit && !eof) {
+            consumed += limit;
+            buffer.clear();
+            eof = channel.read(buffer) < 0;
+            pos = 0;
+            limit = buffer.position();
+        }
+        return pos == limit;
+    }
+
+    /**
+     * Returns the byte at the current position without consuming it.
+     *
+     * @return b The current byte, as an unsigned value.
+     * @throws IOException If the channel fails or has ended.
+     */
+    private int peek() throws IOException {
+        if (atEnd()) {
+            throw error("Unexpected end of banlist");
+        }
+        return bytes[pos] & 0xFF;
+    }
+
+    /**
+     * Consumes and returns the byte at the current position.
+     *
+     * @return b The consumed byte, as an unsigned value.
+     * @throws IOException If the channel fails or has ended.
+     */
+    private int next() throws IOException {
+        if (pos == limit && atEnd()) {
+            throw error("Unexpected end of banlist");
+        }
+        return bytes[pos++] & 0xFF;
+    }
+
+    /**
+     * Returns the number of bytes consumed so far.
+     *
+     * @return position The current offset within the channel.
+     */
+    private long position() {
+        return consumed + pos;
+    }
+
+    /**
+     * Creates an exception describing a parse failure at the current position.
+     *
+     * @param message The description of the failure.
+     * @return exception The exception to throw.
+     */
+    private IOException error(String message) {
+        return new IOException(String.format("%s at offset %d of banlist.", message, position()));
+    }
+
+    /**
+     * Creates entries from the collected field values of a banlist entry.
+     *
+     * @param <T> The type of entry.
+     */
+    private interface EntryFactory<T> {
+
+        /**
+         * Creates an entry.
+         *
+         * @param values The collected field values.
+         * @param start  The offset of the entry, for warnings.
+         * @return entry The entry, or null if the values are invalid.
+         */
+        T create(String[] values, long start);
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * BanBot: A Discord bot and an HTTP server that manages the Templex banlist.
+ * Copyright (C) 2018  vtcakavsmoace
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.templex.banbot.banlist;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.UUID;
+
+/**
+ * Compact binary snapshot of the banned UUIDs. Instances of this class are immutable.
+ * <p>
+ * The encoded form is big-endian and laid out as follows:
+ * <pre>
+ * int   magic     0x42425331 ("BBS1")
+ * long  revision  the revision of the banlist this snapshot was built from
+ * long  checksum  a hash of the contained UUIDs, identical for identical banlists
+ * int   count     the number of UUIDs
+ * count * (long msb, long lsb), sorted as unsigned 128-bit integers
+ * </pre>
+ * Clients may binary search the UUID section directly.
+ */
+public final class BanlistSnapshot {
+
+    /**
+     * Magic number identifying an encoded snapshot.
+     */
+    public static final int MAGIC = 0x42425331;
+
+    /**
+     * The revision of the banlist this snapshot was built from.
+     */
+    private final long revision;
+
+    /**
+     * The checksum of the contained UUIDs.
+     */
+    private final long checksum;
+
+    /**
+     * The number of UUIDs contained within this snapshot.
+     */
+    private final int size;
+
+    /**
+     * The encoded form of this snapshot. The snapshot is only held in encoded form, so that serving it costs no copy.
+     */
+    private final byte[] bytes;
+
+    /**
+     * A view of the sorted UUIDs within the encoded form, as consecutive most/least significant bit pairs.
+     */
+    private final LongBuffer uuids;
+
+    /**
+     * Main constructor for BanlistSnapshot. The passed UUIDs need not be sorted or unique.
+     *
+     * @param revision The revision of the banlist this snapshot is built from.
+     * @param uuids    The UUIDs, stored as consecutive most/least significant bit pairs.
+     */
+    public BanlistSnapshot(long revision, long[] uuids) {
+        long[] sorted = dedupe(sort(uuids.clone()));
+        long hash = 0x9E3779B97F4A7C15L;
+        for (long bits : sorted) {
+            hash = mix(hash ^ bits);
+        }
+        this.revision = revision;
+        this.checksum = hash;
+        this.size = sorted.length / 2;
+        ByteBuffer buffer = ByteBuffer.allocate(24 + sorted.length * 8);
+        buffer.putInt(MAGIC).putLong(revision).putLong(checksum).putInt(size);
+        this.uuids = buffer.slice().asLongBuffer();
+        this.uuids.put(sorted);
+        this.bytes = buffer.array();
+    }
+
+    /**
+     * Returns the revision of the banlist this snapshot was built from.
+     *
+     * @return revision The revision of this snapshot.
+     */
+    public long getRevision() {
+        return revision;
+    }
+
+    /**
+     * Returns the checksum of the contained UUIDs. This is suitable for use as an entity tag.
+     *
+     * @return checksum The checksum of this snapshot.
+     */
+    public long getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * Returns the number of UUIDs contained within this snapshot.
+     *
+     * @return size The number of UUIDs.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the most significant bits of the UUID at the passed position.
+     *
+     * @param index The position of the UUID.
+     * @return msb The most significant bits.
+     */
+    public long getMostSignificantBits(int index) {
+        return uuids.get(index * 2);
+    }
+
+    /**
+     * Returns the least significant bits of the UUID at the passed position.
+     *
+     * @param index The position of the UUID.
+     * @return lsb The least significant bits.
+     */
+    public long getLeastSignificantBits(int index) {
+        return uuids.get(index * 2 + 1);
+    }
+
+    /**
+     * Checks whether the passed UUID is contained within this snapshot.
+     *
+     * @param uuid The UUID to check.
+     * @return contained Whether the UUID is contained.
+     */
+    public boolean contains(UUID uuid) {
+        long msb = uuid.getMostSignificantBits(), lsb = uuid.getLeastSignificantBits();
+        int low = 0, high = size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(uuids.get(mid * 2), uuids.get(mid * 2 + 1), msb, lsb);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the binary form of this snapshot. The returned array is shared and must not be modified.
+     *
+     * @return bytes The encoded snapshot.
+     */
+    public byte[] toBytes() {
+        return bytes;
+    }
+
+    /**
+     * Compares two UUIDs as unsigned 128-bit integers.
+     *
+     * @param msb1 The most significant bits of the first UUID.
+     * @param lsb1 The least significant bits of the first UUID.
+     * @param msb2 The most significant bits of the second UUID.
+     * @param lsb2 The least significant bits of the second UUID.
+     * @return cmp A negative, zero or positive number as the first UUID is less than, equal to or greater than the
+     * second.
+     */
+    static int compare(long msb1, long lsb1, long msb2, long lsb2) {
+        int cmp = Long.compareUnsigned(msb1, msb2);
+        return cmp != 0 ? cmp : Long.compareUnsigned(lsb1, lsb2);
+    }
+
+    /**
+     * The 64-bit finalizer of MurmurHash3. Used for checksums and Bloom filter hashing.
+     *
+     * @param h The value to mix.
+     * @return mixed The mixed value.
+     */
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Sorts UUID pairs in place using an iterative heapsort, which avoids boxing every pair.
+     *
+     * @param uuids The UUID pairs to sort.
+     * @return uuids The same array, now sorted.
+     */
+    private static long[] sort(long[] uuids) {
+        int n = uuids.length / 2;
+        for (int i = n / 2 - 1; i >= 0; i--) {
+            siftDown(uuids, i, n);
+        }
+        for (int end = n - 1; end > 0; end--) {
+            swap(uuids, 0, end);
+            siftDown(uuids, 0, end);
+        }
+        return uuids;
+    }
+
+    /**
+     * Restores the heap property below the passed node.
+     *
+     * @param uuids The UUID pairs forming the heap.
+     * @param node  The node to sift down.
+     * @param n     The number of pairs within the heap.
+     */
+    private static void siftDown(long[] uuids, int node, int n) {
+        while (true) {
+            int child = node * 2 + 1;
+            if (child >= n) {
+                return;
+            }
+            if (child + 1 < n && compare(uuids[child * 2], uuids[child * 2 + 1], uuids[child * 2 + 2], uuids[child * 2 + 3]) < 0) {
+                child++;
+            }
+            if (compare(uuids[node * 2], uuids[node * 2 + 1], uuids[child * 2], uuids[child * 2 + 1]) >= 0) {
+                return;
+            }
+            swap(uuids, node, child);
+            node = child;
+        }
+    }
+
+    /**
+     * Swaps two UUID pairs.
+     *
+     * @param uuids The UUID pairs.
+     * @param a     The first pair index.
+     * @param b     The second pair index.
+     */
+    private static void swap(long[] uuids, int a, int b) {
+        long msb = uuids[a * 2], lsb = uuids[a * 2 + 1];
+        uuids[a * 2] = uuids[b * 2];
+        uuids[a * 2 + 1] = uuids[b * 2 + 1];
+        uuids[b * 2] = msb;
+        uuids[b * 2 + 1] = lsb;
+    }
+
+    /**
+     * Removes adjacent duplicates from sorted UUID pairs.
+     *
+     * @param uuids The sorted UUID pairs.
+     * @return unique The UUID pairs without duplicates.
+     */
+    private static long[] dedupe(long[] uuids) {
+        int n = uuids.length / 2, unique = 0;
+        for (int i = 0; i < n; i++) {
+            if (unique == 0 || compare(uuids[(unique - 1) * 2], uuids[(unique - 1) * 2 + 1], uuids[i * 2], uuids[i * 2 + 1]) != 0) {
+                uuids[unique * 2] = uuids[i * 2];
+                uuids[unique * 2 + 1] = uuids[i * 2 + 1];
+                unique++;
+            }
+        }
+        if (unique == n) {
+            return uuids;
+        }
+        long[] trimmed = new long[unique * 2];
+        System.arraycopy(uuids, 0, trimmed, 0, trimmed.length);
+        return trimmed;
+    }
+}
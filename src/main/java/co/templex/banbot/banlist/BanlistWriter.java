@@ -0,0 +1,283 @@
+/*
+ * BanBot: A Discord bot and an HTTP server that manages the Templex banlist.
+ * Copyright (C) 2018  vtcakavsmoace
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.templex.banbot.banlist;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Writes banlist entries in the banned-players.json format.
+ */
+public class BanlistWriter {
+
+    /**
+     * Hidden constructor. Instantiation of this class is not permitted.
+     */
+    private BanlistWriter() {
+        throw new UnsupportedOperationException("Instantiation not permitted.");
+    }
+
+    /**
+     * Writes every entry of the passed index as a JSON array.
+     *
+     * @param index The index to write.
+     * @return json The JSON array.
+     */
+    public static String toJson(BanlistIndex index) {
+        StringBuilder builder = new StringBuilder(index.size() * 160 + 2).append('[');
+        for (int i = 0; i < index.size(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            appendEntry(builder, index.get(i));
+        }
+        return builder.append(']').toString();
+    }
+
+    /**
+     * Streams every entry of the passed index as a JSON array. Entries are encoded a batch at a time while the stream
+     * is read, so serving a large index never holds its full JSON form. The index is immutable, so the stream stays
+     * consistent however long the client takes to read it.
+     *
+     * @param index The index to write.
+     * @return stream The JSON array as UTF-8 bytes.
+     */
+    public static InputStream toJsonStream(BanlistIndex index) {
+        return new JsonInputStream(Collections.singletonList(index));
+    }
+
+    /**
+     * Streams every entry of the passed indexes, in order, as a single JSON array. See {@link #toJsonStream(BanlistIndex)}.
+     *
+     * @param indexes The indexes to write, ex. the shards of a {@link MergedBanlist}.
+     * @return stream The JSON array as UTF-8 bytes.
+     */
+    public static InputStream toJsonStream(List<BanlistIndex> indexes) {
+        return new JsonInputStream(indexes);
+    }
+
+    /**
+     * Writes a single entry as a JSON object.
+     *
+     * @param entry The entry to write.
+     * @return json The JSON object.
+     */
+    public static String toJson(BanEntry entry) {
+        return appendEntry(new StringBuilder(160), entry).toString();
+    }
+
+    /**
+     * Appends a single entry as a JSON object. Absent fields are omitted.
+     *
+     * @param builder The builder to append to.
+     * @param entry   The entry to write.
+     * @return builder The passed builder.
+     */
+    public static StringBuilder appendEntry(StringBuilder builder, BanEntry entry) {
+        builder.append("{\"uuid\":\"").append(entry.getUuid()).append('"');
+        appendField(builder, "name", entry.getName());
+        appendField(builder, "created", entry.getCreated());
+        appendField(builder, "source", entry.getSource());
+        appendField(builder, "expires", entry.getExpires());
+        appendField(builder, "reason", entry.getReason());
+        return builder.append('}');
+    }
+
+    /**
+     * Appends the removal of an entry, as found within a change feed, as a JSON object.
+     *
+     * @param builder The builder to append to.
+     * @param uuid    The UUID of the removed entry.
+     * @return builder The passed builder.
+     * @see BanlistParser#parseChanges
+     */
+    public static StringBuilder appendRemoval(StringBuilder builder, UUID uuid) {
+        return builder.append("{\"uuid\":\"").append(uuid).append("\",\"change\":\"").append(BanlistParser.REMOVED).append("\"}");
+    }
+
+    /**
+     * Appends a string field, if present.
+     *
+     * @param builder The builder to append to.
+     * @param key     The key of the field.
+     * @param value   The value of the field. May be null.
+     */
+    private static void appendField(StringBuilder builder, String key, String value) {
+        if (value != null) {
+            builder.append(",\"").append(key).append("\":");
+            appendString(builder, value);
+        }
+    }
+
+    /**
+     * Appends a quoted and escaped JSON string.
+     *
+     * @param builder The builder to append to.
+     * @param value   The string to append.
+     * @return builder The passed builder.
+     */
+    public static StringBuilder appendString(StringBuilder builder, String value) {
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+                    break;
+            }
+        }
+        return builder.append('"');
+    }
+
+    /**
+     * Input stream encoding one or more indexes as a single JSON array, batch by batch.
+     */
+    private static final class JsonInputStream extends InputStream {
+
+        /**
+         * The number of entries encoded per batch.
+         */
+        private static final int BATCH_SIZE = 256;
+
+        /**
+         * The indexes being written.
+         */
+        private final List<BanlistIndex> indexes;
+
+        /**
+         * The builder reused for every batch.
+         */
+        private final StringBuilder builder = new StringBuilder(BATCH_SIZE * 160);
+
+        /**
+         * The position of the index being encoded, or -1 before the opening bracket.
+         */
+        private int current = -1;
+
+        /**
+         * The position of the next entry to encode within the current index.
+         */
+        private int next;
+
+        /**
+         * Whether an entry has been encoded yet, so that the next one is preceded by a comma.
+         */
+        private boolean separated;
+
+        /**
+         * The current batch.
+         */
+        private byte[] batch = new byte[0];
+
+        /**
+         * The position of the next byte to read within the current batch.
+         */
+        private int offset;
+
+        /**
+         * Main constructor for JsonInputStream.
+         *
+         * @param indexes The indexes to write.
+         */
+        private JsonInputStream(List<BanlistIndex> indexes) {
+            this.indexes = indexes;
+        }
+
+        @Override
+        public int read() {
+            if (offset == batch.length && !fill()) {
+                return -1;
+            }
+            return batch[offset++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (offset == batch.length && !fill()) {
+                return -1;
+            }
+            int n = Math.min(len, batch.length - offset);
+            System.arraycopy(batch, offset, b, off, n);
+            offset += n;
+            return n;
+        }
+
+        /**
+         * Encodes the next batch of entries.
+         *
+         * @return filled Whether anything remained to be encoded.
+         */
+        private boolean fill() {
+            if (current > indexes.size()) {
+                return false;
+            }
+            builder.setLength(0);
+            if (current < 0) {
+                builder.append('[');
+                current = 0;
+            }
+            for (int batched = 0; batched < BATCH_SIZE && current < indexes.size(); ) {
+                BanlistIndex index = indexes.get(current);
+                if (next == index.size()) {
+                    current++;
+                    next = 0;
+                    continue;
+                }
+                if (separated) {
+                    builder.append(',');
+                }
+                appendEntry(builder, index.get(next++));
+                separated = true;
+                batched++;
+            }
+            if (current == indexes.size()) {
+                builder.append(']');
+                current++;
+            }
+            batch = builder.toString().getBytes(StandardCharsets.UTF_8);
+            offset = 0;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * BanBot: A Discord bot and an HTTP server that manages the Templex banlist.
+ * Copyright (C) 2018  vtcakavsmoace
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.templex.banbot.banlist;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Bloom filter over the banned UUIDs, sized from a banlist snapshot. Instances of this class are immutable.
+ * <p>
+ * A UUID is hashed as {@code h1 = mix(msb ^ Long.rotateLeft(lsb, 32))} and {@code h2 = mix(lsb) | 1}, where mix is
+ * the 64-bit MurmurHash3 finalizer. The i-th probed bit is {@code Long.remainderUnsigned(h1 + i * h2, bits)}, and bit
+ * {@code b} lives in word {@code b >>> 6} at position {@code b & 63}. The encoded form is big-endian:
+ * <pre>
+ * int   magic     0x42424631 ("BBF1")
+ * long  revision  the revision of the banlist this filter was built from
+ * long  checksum  the checksum of the snapshot this filter was built from
+ * int   hashes    the number of probed bits per UUID
+ * int   words     the number of 64-bit words in the bit set
+ * words * long    the bit set
+ * </pre>
+ */
+public final class BloomFilter {
+
+    /**
+     * Magic number identifying an encoded filter.
+     */
+    public static final int MAGIC = 0x42424631;
+
+    /**
+     * The maximum number of probed bits per UUID.
+     */
+    private static final int MAX_HASHES = 16;
+
+    /**
+     * The revision of the banlist this filter was built from.
+     */
+    private final long revision;
+
+    /**
+     * The checksum of the snapshot this filter was built from.
+     */
+    private final long checksum;
+
+    /**
+     * The number of probed bits per UUID.
+     */
+    private final int hashes;
+
+    /**
+     * The bit set of this filter.
+     */
+    private final long[] words;
+
+    /**
+     * Builds a filter containing every UUID of the passed snapshot, sized for the requested false positive rate.
+     *
+     * @param snapshot          The snapshot to build the filter from.
+     * @param falsePositiveRate The target false positive rate, strictly between 0 and 1.
+     */
+    public BloomFilter(BanlistSnapshot snapshot, double falsePositiveRate) {
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1.");
+        }
+        int n = Math.max(1, snapshot.size());
+        long bits = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (bits + 63) / 64));
+        this.revision = snapshot.getRevision();
+        this.checksum = snapshot.getChecksum();
+        this.hashes = (int) Math.max(1, Math.min(MAX_HASHES, Math.round((double) wordCount * 64 / n * Math.log(2))));
+        this.words = new long[wordCount];
+        for (int i = 0; i < snapshot.size(); i++) {
+            long msb = snapshot.getMostSignificantBits(i), lsb = snapshot.getLeastSignificantBits(i);
+            long h1 = BanlistSnapshot.mix(msb ^ Long.rotateLeft(lsb, 32)), h2 = BanlistSnapshot.mix(lsb) | 1;
+            for (int k = 0; k < hashes; k++) {
+                long bit = Long.remainderUnsigned(h1 + k * h2, (long) words.length * 64);
+                words[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+    }
+
+    /**
+     * Returns the revision of the banlist this filter was built from.
+     *
+     * @return revision The revision of this filter.
+     */
+    public long getRevision() {
+        return revision;
+    }
+
+    /**
+     * Returns the checksum of the snapshot this filter was built from.
+     *
+     * @return checksum The checksum of this filter.
+     */
+    public long getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * Checks whether the passed UUID may be banned. A false return guarantees that the UUID is not banned.
+     *
+     * @param uuid The UUID to check.
+     * @return possible Whether the UUID may be contained within this filter.
+     */
+    public boolean mightContain(UUID uuid) {
+        long msb = uuid.getMostSignificantBits(), lsb = uuid.getLeastSignificantBits();
+        long h1 = BanlistSnapshot.mix(msb ^ Long.rotateLeft(lsb, 32)), h2 = BanlistSnapshot.mix(lsb) | 1;
+        for (int k = 0; k < hashes; k++) {
+            long bit = Long.remainderUnsigned(h1 + k * h2, (long) words.length * 64);
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Encodes this filter into its binary form.
+     *
+     * @return bytes The encoded filter.
+     */
+    public byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(28 + words.length * 8);
+        buffer.putInt(MAGIC).putLong(revision).putLong(checksum).putInt(hashes).putInt(words.length);
+        buffer.asLongBuffer().put(words);
+        return buffer.array();
+    }
+}
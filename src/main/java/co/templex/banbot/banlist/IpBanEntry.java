@@ -0,0 +1,154 @@
+/*
+ * BanBot: A Discord bot and an HTTP server that manages the Templex banlist.
+ * Copyright (C) 2018  vtcakavsmoace
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.templex.banbot.banlist;
+
+import lombok.NonNull;
+
+/**
+ * A single entry of banned-ips.json. The address may be a CIDR range. Instances of this class are immutable.
+ */
+public final class IpBanEntry {
+
+    /**
+     * The banned address or range.
+     */
+    private final IpRange range;
+
+    /**
+     * The creation date of the ban, as written by the Minecraft server.
+     */
+    private final String created;
+
+    /**
+     * The issuer of the ban.
+     */
+    private final String source;
+
+    /**
+     * The expiry date of the ban, or "forever" for permanent bans.
+     */
+    private final String expires;
+
+    /**
+     * The reason given for the ban.
+     */
+    private final String reason;
+
+    /**
+     * The expiry date of the ban in epoch seconds, {@link BanlistIndex#FOREVER} or {@link BanlistIndex#UNKNOWN}.
+     */
+    private final long expiresAt;
+
+    /**
+     * Main constructor for IpBanEntry. Only the range is required.
+     *
+     * @param range   The banned address or range.
+     * @param created The creation date of the ban.
+     * @param source  The issuer of the ban.
+     * @param expires The expiry date of the ban.
+     * @param reason  The reason given for the ban.
+     */
+    public IpBanEntry(@NonNull IpRange range, String created, String source, String expires, String reason) {
+        this.range = range;
+        this.created = created;
+        this.source = source;
+        this.expires = expires;
+        this.reason = reason;
+        this.expiresAt = BanlistIndex.parseDate(expires);
+    }
+
+    /**
+     * Returns the banned address or range.
+     *
+     * @return range The banned range.
+     */
+    public IpRange getRange() {
+        return range;
+    }
+
+    /**
+     * Returns the creation date of the ban.
+     *
+     * @return created The creation date of the ban.
+     */
+    public String getCreated() {
+        return created;
+    }
+
+    /**
+     * Returns the issuer of the ban.
+     *
+     * @return source The issuer of the ban.
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Returns the expiry date of the ban.
+     *
+     * @return expires The expiry date of the ban.
+     */
+    public String getExpires() {
+        return expires;
+    }
+
+    /**
+     * Returns the reason given for the ban.
+     *
+     * @return reason The reason given for the ban.
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * Checks whether the ban has expired. Bans without a parseable expiry date never expire, as with the Minecraft
+     * server.
+     *
+     * @param now The current time in epoch seconds.
+     * @return expired Whether the ban has expired.
+     */
+    public boolean isExpired(long now) {
+        return expiresAt != BanlistIndex.FOREVER && expiresAt != BanlistIndex.UNKNOWN && expiresAt <= now;
+    }
+
+    /**
+     * Writes this entry as a JSON object in the banned-ips.json format. Absent fields are omitted.
+     *
+     * @return json The JSON object.
+     */
+    public String toJson() {
+        StringBuilder builder = new StringBuilder(128).append("{\"ip\":");
+        BanlistWriter.appendString(builder, range.toString());
+        String[][] fields = {{"created", created}, {"source", source}, {"expires", expires}, {"reason", reason}};
+        for (String[] field : fields) {
+            if (field[1] != null) {
+                builder.append(",\"").append(field[0]).append("\":");
+                BanlistWriter.appendString(builder, field[1]);
+            }
+        }
+        return builder.append('}').toString();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("IpBanEntry{range=%s, source=%s, expires=%s}", range, source, expires);
+    }
+}
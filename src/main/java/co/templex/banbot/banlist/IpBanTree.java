@@ -0,0 +1,282 @@
+/*
+ * BanBot: A Discord bot and an HTTP server that manages the Templex banlist.
+ * Copyright (C) 2018  vtcakavsmoace
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.templex.banbot.banlist;
+
+import lombok.NonNull;
+
+/**
+ * Persistent Patricia (path-compressed binary radix) tree over banned IPv4 and IPv6 ranges. Instances are immutable:
+ * {@link #with(IpBanEntry)} and {@link #without(IpRange)} copy only the path to the changed node and return a new
+ * tree, so readers holding a tree never need to lock and never observe a partial update.
+ * <p>
+ * A lookup walks at most one node per prefix bit, and usually far fewer, so it is O(prefix length) regardless of the
+ * number of bans.
+ */
+public final class IpBanTree {
+
+    /**
+     * A tree containing no bans.
+     */
+    public static final IpBanTree EMPTY = new IpBanTree(null, 0);
+
+    /**
+     * The root node of this tree, or null if the tree is empty.
+     */
+    private final Node root;
+
+    /**
+     * The number of bans within this tree.
+     */
+    private final int size;
+
+    /**
+     * Main constructor for IpBanTree.
+     *
+     * @param root The root node.
+     * @param size The number of bans.
+     */
+    private IpBanTree(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns the number of bans within this tree.
+     *
+     * @return size The number of bans.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Finds the most specific unexpired ban covering the passed address. An expired ban gives way to any less specific
+     * ban still in effect.
+     *
+     * @param address The address to check. A range is checked by its first address.
+     * @param now     The current time in epoch seconds.
+     * @return entry The covering ban, or null if the address is not banned.
+     */
+    public IpBanEntry find(@NonNull IpRange address, long now) {
+        return find(address.getHigh(), address.getLow(), now);
+    }
+
+    /**
+     * Finds the most specific unexpired ban covering the passed 128-bit address.
+     *
+     * @param high The upper 64 bits of the address.
+     * @param low  The lower 64 bits of the address.
+     * @param now  The current time in epoch seconds.
+     * @return entry The covering ban, or null if the address is not banned.
+     */
+    public IpBanEntry find(long high, long low, long now) {
+        IpBanEntry best = null;
+        Node node = root;
+        while (node != null && commonPrefix(node.high, node.low, high, low, node.length) == node.length) {
+            if (node.entry != null && !node.entry.isExpired(now)) {
+                best = node.entry;
+            }
+            if (node.length == 128) {
+                break;
+            }
+            node = bit(high, low, node.length) == 0 ? node.zero : node.one;
+        }
+        return best;
+    }
+
+    /**
+     * Returns a tree with the passed ban added, replacing any ban of the same range.
+     *
+     * @param entry The ban to add.
+     * @return tree The new tree.
+     */
+    public IpBanTree with(@NonNull IpBanEntry entry) {
+        boolean[] replaced = {false};
+        Node newRoot = insert(root, entry, replaced);
+        return new IpBanTree(newRoot, replaced[0] ? size : size + 1);
+    }
+
+    /**
+     * Returns a tree with the ban of exactly the passed range removed. Bans of enclosing or enclosed ranges are kept.
+     *
+     * @param range The range to unban.
+     * @return tree The new tree, or this tree if the range was not banned.
+     */
+    public IpBanTree without(@NonNull IpRange range) {
+        boolean[] removed = {false};
+        Node newRoot = remove(root, range, removed);
+        return removed[0] ? new IpBanTree(newRoot, size - 1) : this;
+    }
+
+    /**
+     * Inserts a ban below the passed node, copying the path to it.
+     *
+     * @param node     The subtree to insert into. May be null.
+     * @param entry    The ban to insert.
+     * @param replaced Set to true if a ban of the same range was replaced.
+     * @return node The new subtree.
+     */
+    private static Node insert(Node node, IpBanEntry entry, boolean[] replaced) {
+        IpRange range = entry.getRange();
+        long high = range.getHigh(), low = range.getLow();
+        int length = range.getLength();
+        if (node == null) {
+            return new Node(high, low, length, entry, null, null);
+        }
+        int common = commonPrefix(node.high, node.low, high, low, Math.min(node.length, length));
+        if (common == node.length && common == length) {
+            replaced[0] = node.entry != null;
+            return new Node(node.high, node.low, node.length, entry, node.zero, node.one);
+        }
+        if (common == node.length) {
+            if (bit(high, low, common) == 0) {
+                return new Node(node.high, node.low, node.length, node.entry, insert(node.zero, entry, replaced), node.one);
+            }
+            return new Node(node.high, node.low, node.length, node.entry, node.zero, insert(node.one, entry, replaced));
+        }
+        Node leaf = new Node(high, low, length, entry, null, null);
+        if (common == length) {
+            return bit(node.high, node.low, common) == 0
+                    ? new Node(high, low, length, entry, node, null)
+                    : new Node(high, low, length, entry, null, node);
+        }
+        return bit(high, low, common) == 0
+                ? new Node(high, low, common, null, leaf, node)
+                : new Node(high, low, common, null, node, leaf);
+    }
+
+    /**
+     * Removes the ban of exactly the passed range below the passed node, copying the path to it and collapsing nodes
+     * left without a ban and with fewer than two children.
+     *
+     * @param node    The subtree to remove from. May be null.
+     * @param range   The range to remove.
+     * @param removed Set to true if a ban was removed.
+     * @return node The new subtree, which is the passed node if nothing was removed.
+     */
+    private static Node remove(Node node, IpRange range, boolean[] removed) {
+        if (node == null || node.length > range.getLength()
+                || commonPrefix(node.high, node.low, range.getHigh(), range.getLow(), node.length) != node.length) {
+            return node;
+        }
+        Node zero = node.zero, one = node.one;
+        IpBanEntry entry = node.entry;
+        if (node.length == range.getLength()) {
+            if (entry == null) {
+                return node;
+            }
+            removed[0] = true;
+            entry = null;
+        } else if (bit(range.getHigh(), range.getLow(), node.length) == 0) {
+            zero = remove(zero, range, removed);
+        } else {
+            one = remove(one, range, removed);
+        }
+        if (!removed[0]) {
+            return node;
+        }
+        if (entry == null && (zero == null || one == null)) {
+            return zero == null ? one : zero;
+        }
+        return new Node(node.high, node.low, node.length, entry, zero, one);
+    }
+
+    /**
+     * Returns the bit at the passed position of a 128-bit key, counting from the most significant bit.
+     *
+     * @param high  The upper 64 bits of the key.
+     * @param low   The lower 64 bits of the key.
+     * @param index The position of the bit.
+     * @return bit The bit, either 0 or 1.
+     */
+    private static int bit(long high, long low, int index) {
+        return (int) (index < 64 ? high >>> (63 - index) : low >>> (127 - index)) & 1;
+    }
+
+    /**
+     * Computes the length of the common prefix of two 128-bit keys, capped at the passed limit.
+     *
+     * @param high1 The upper 64 bits of the first key.
+     * @param low1  The lower 64 bits of the first key.
+     * @param high2 The upper 64 bits of the second key.
+     * @param low2  The lower 64 bits of the second key.
+     * @param limit The maximum length to report.
+     * @return common The number of leading bits shared by both keys, at most the limit.
+     */
+    private static int commonPrefix(long high1, long low1, long high2, long low2, int limit) {
+        long diff = high1 ^ high2;
+        int common = diff != 0 ? Long.numberOfLeadingZeros(diff) : 64 + Long.numberOfLeadingZeros(low1 ^ low2);
+        return Math.min(common, limit);
+    }
+
+    /**
+     * A node of the tree. Bits of the key beyond the node's length are not significant.
+     */
+    private static final class Node {
+
+        /**
+         * The upper 64 bits of this node's prefix.
+         */
+        private final long high;
+
+        /**
+         * The lower 64 bits of this node's prefix.
+         */
+        private final long low;
+
+        /**
+         * The length of this node's prefix.
+         */
+        private final int length;
+
+        /**
+         * The ban of exactly this node's prefix, or null if this node only joins its children.
+         */
+        private final IpBanEntry entry;
+
+        /**
+         * The subtree whose next bit is zero.
+         */
+        private final Node zero;
+
+        /**
+         * The subtree whose next bit is one.
+         */
+        private final Node one;
+
+        /**
+         * Main constructor for Node.
+         *
+         * @param high   The upper 64 bits of the prefix.
+         * @param low    The lower 64 bits of the prefix.
+         * @param length The length of the prefix.
+         * @param entry  The ban of exactly this prefix. May be null.
+         * @param zero   The subtree whose next bit is zero. May be null.
+         * @param one    The subtree whose next bit is one. May be null.
+         */
+        private Node(long high, long low, int length, IpBanEntry entry, Node zero, Node one) {
+            this.high = high;
+            this.low = low;
+            this.length = length;
+            this.entry = entry;
+            this.zero = zero;
+            this.one = one;
+        }
+    }
+}
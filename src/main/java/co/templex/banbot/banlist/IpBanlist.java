@@ -0,0 +1,169 @@
+/*
+ * BanBot: A Discord bot and an HTTP server that manages the Templex banlist.
+ * Copyright (C) 2018  vtcakavsmoace
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.templex.banbot.banlist;
+
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The IP banlist file (banned-ips.json) and the radix tree derived from it. Like {@link Banlist}, the file is only
+ * re-read when its size or modification time changes, and a new tree is published by swapping a single reference, so
+ * lookups never block. A missing file is treated as an empty banlist, as the Minecraft server only creates it on the
+ * first IP ban.
+ */
+public class IpBanlist {
+
+    /**
+     * The logger instance for all instances of IpBanlist. This serves solely for debug purposes.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(IpBanlist.class);
+
+    /**
+     * The path of the IP banlist file.
+     */
+    private final Path path;
+
+    /**
+     * The most recently published state of this IP banlist.
+     */
+    private final AtomicReference<State> state = new AtomicReference<>(new State(-1, -1, IpBanTree.EMPTY));
+
+    /**
+     * The modification time of the file as of the last failed read, or -1. Guarded by this IP banlist.
+     */
+    private long failedModified = -1;
+
+    /**
+     * The size of the file as of the last failed read, or -1. Guarded by this IP banlist.
+     */
+    private long failedSize = -1;
+
+    /**
+     * Main constructor for IpBanlist. Nothing is read until {@link #refresh()} is called.
+     *
+     * @param path The path of the IP banlist file.
+     */
+    public IpBanlist(@NonNull Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Re-reads the IP banlist file if it has changed since the last refresh. This is cheap when nothing has changed,
+     * and is safe to call concurrently; only one caller will rebuild the tree. A file which fails to parse is not read
+     * again until its size or modification time changes, and the previous tree stays published meanwhile.
+     *
+     * @throws IOException If the IP banlist file is unreadable or malformed.
+     */
+    public void refresh() throws IOException {
+        long modified, size;
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            modified = attributes.lastModifiedTime().toMillis();
+            size = attributes.size();
+        } catch (NoSuchFileException e) {
+            modified = 0;
+            size = 0;
+        }
+        if (state.get().matches(modified, size)) {
+            return;
+        }
+        synchronized (this) {
+            if (state.get().matches(modified, size) || (failedModified == modified && failedSize == size)) {
+                return;
+            }
+            IpBanTree[] tree = {IpBanTree.EMPTY};
+            if (size > 0) {
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    failedModified = modified;
+                    failedSize = size;
+                    BanlistParser.parseIpBans(channel, entry -> tree[0] = tree[0].with(entry));
+                }
+            }
+            failedModified = -1;
+            failedSize = -1;
+            state.set(new State(modified, size, tree[0]));
+            logger.info(String.format("Loaded %d IP bans from %s.", tree[0].size(), path));
+        }
+    }
+
+    /**
+     * Returns the current tree of this IP banlist. The returned tree is immutable and stays valid after later
+     * refreshes.
+     *
+     * @return tree The current tree.
+     */
+    public IpBanTree getTree() {
+        return state.get().tree;
+    }
+
+    /**
+     * A published revision of the IP banlist.
+     */
+    private static final class State {
+
+        /**
+         * The modification time of the file this state was read from.
+         */
+        private final long modified;
+
+        /**
+         * The size of the file this state was read from.
+         */
+        private final long size;
+
+        /**
+         * The tree of this revision.
+         */
+        private final IpBanTree tree;
+
+        /**
+         * Main constructor for State.
+         *
+         * @param modified The modification time of the file this state was read from.
+         * @param size     The size of the file this state was read from.
+         * @param tree     The tree of this revision.
+         */
+        private State(long modified, long size, IpBanTree tree) {
+            this.modified = modified;
+            this.size = size;
+            this.tree = tree;
+        }
+
+        /**
+         * Checks whether this state was read from a file with the passed attributes.
+         *
+         * @param modified The modification time of the file.
+         * @param size     The size of the file.
+         * @return matches Whether the attributes match.
+         */
+        private boolean matches(long modified, long size) {
+            return this.modified == modified && this.size == size;
+        }
+    }
+}
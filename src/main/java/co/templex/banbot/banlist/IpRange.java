@@ -0,0 +1,238 @@
+/*
+ * BanBot: A Discord bot and an HTTP server that manages the Templex banlist.
+ * Copyright (C) 2018  vtcakavsmoace
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.templex.banbot.banlist;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * An IPv4 or IPv6 address range in CIDR notation, held as a 128-bit prefix. IPv4 ranges are mapped into the
+ * ::ffff:0:0/96 block, so both families share one key space. Instances of this class are immutable.
+ */
+public final class IpRange {
+
+    /**
+     * The upper 64 bits of the prefix. Bits beyond the prefix length are zero.
+     */
+    private final long high;
+
+    /**
+     * The lower 64 bits of the prefix. Bits beyond the prefix length are zero.
+     */
+    private final long low;
+
+    /**
+     * The number of significant bits, from 0 to 128.
+     */
+    private final int length;
+
+    /**
+     * The original textual form of this range.
+     */
+    private final String text;
+
+    /**
+     * Main constructor for IpRange. Bits beyond the prefix length are cleared.
+     *
+     * @param high   The upper 64 bits of the prefix.
+     * @param low    The lower 64 bits of the prefix.
+     * @param length The number of significant bits.
+     * @param text   The textual form of the range.
+     */
+    IpRange(long high, long low, int length, String text) {
+        this.high = length == 0 ? 0 : length >= 64 ? high : high & (-1L << (64 - length));
+        this.low = length <= 64 ? 0 : length == 128 ? low : low & (-1L << (128 - length));
+        this.length = length;
+        this.text = text;
+    }
+
+    /**
+     * Parses an address or CIDR range. Only literals are accepted; no name resolution is ever performed.
+     *
+     * @param text An IPv4 or IPv6 literal, optionally followed by "/" and a prefix length.
+     * @return range The parsed range. A plain address yields a single-address range.
+     * @throws IllegalArgumentException If the text is not a valid literal or range.
+     */
+    public static IpRange parse(String text) {
+        String trimmed = text.trim();
+        int slash = trimmed.indexOf('/');
+        String address = slash < 0 ? trimmed : trimmed.substring(0, slash);
+        long high, low;
+        int maxLength;
+        if (address.indexOf(':') >= 0) {
+            for (int i = 0; i < address.length(); i++) {
+                // only literal characters are let through, so that the lookup below can never resolve a name
+                if (Character.digit(address.charAt(i), 16) < 0 && address.charAt(i) != ':' && address.charAt(i) != '.') {
+                    throw new IllegalArgumentException("Invalid IPv6 address: " + text);
+                }
+            }
+            byte[] bytes;
+            try {
+                bytes = InetAddress.getByName(address).getAddress();
+            } catch (UnknownHostException e) {
+                throw new IllegalArgumentException("Invalid IPv6 address: " + text, e);
+            }
+            if (bytes.length == 4) { // IPv4-mapped literals are returned as IPv4 addresses
+                high = 0;
+                low = 0xFFFF00000000L | toInt(bytes);
+            } else {
+                high = toLong(bytes, 0);
+                low = toLong(bytes, 8);
+            }
+            maxLength = 128;
+        } else {
+            high = 0;
+            low = 0xFFFF00000000L | (parseIpv4(address, text) & 0xFFFFFFFFL);
+            maxLength = 32;
+        }
+        int length = maxLength;
+        if (slash >= 0) {
+            try {
+                length = Integer.parseInt(trimmed.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid prefix length: " + text, e);
+            }
+            if (length < 0 || length > maxLength) {
+                throw new IllegalArgumentException("Invalid prefix length: " + text);
+            }
+        }
+        return new IpRange(high, low, maxLength == 32 ? length + 96 : length, trimmed);
+    }
+
+    /**
+     * Parses a dotted-quad IPv4 literal.
+     *
+     * @param address The literal to parse.
+     * @param text    The full text being parsed, for error messages.
+     * @return bits The address as a 32-bit integer.
+     */
+    private static int parseIpv4(String address, String text) {
+        String[] parts = address.split("\\.", -1);
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("Invalid IPv4 address: " + text);
+        }
+        int bits = 0;
+        for (String part : parts) {
+            if (part.isEmpty() || part.length() > 3) {
+                throw new IllegalArgumentException("Invalid IPv4 address: " + text);
+            }
+            int octet = 0;
+            for (int i = 0; i < part.length(); i++) {
+                char c = part.charAt(i);
+                if (c < '0' || c > '9') {
+                    throw new IllegalArgumentException("Invalid IPv4 address: " + text);
+                }
+                octet = octet * 10 + (c - '0');
+            }
+            if (octet > 255) {
+                throw new IllegalArgumentException("Invalid IPv4 address: " + text);
+            }
+            bits = (bits << 8) | octet;
+        }
+        return bits;
+    }
+
+    /**
+     * Reads a big-endian 32-bit integer.
+     *
+     * @param bytes The bytes to read.
+     * @return value The integer.
+     */
+    private static long toInt(byte[] bytes) {
+        return ((bytes[0] & 0xFFL) << 24) | ((bytes[1] & 0xFFL) << 16) | ((bytes[2] & 0xFFL) << 8) | (bytes[3] & 0xFFL);
+    }
+
+    /**
+     * Reads a big-endian 64-bit integer.
+     *
+     * @param bytes  The bytes to read.
+     * @param offset The offset of the first byte.
+     * @return value The integer.
+     */
+    private static long toLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            value = (value << 8) | (bytes[i] & 0xFFL);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the upper 64 bits of the prefix.
+     *
+     * @return high The upper bits.
+     */
+    public long getHigh() {
+        return high;
+    }
+
+    /**
+     * Returns the lower 64 bits of the prefix.
+     *
+     * @return low The lower bits.
+     */
+    public long getLow() {
+        return low;
+    }
+
+    /**
+     * Returns the number of significant bits, counted within the 128-bit key space.
+     *
+     * @return length The prefix length.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Checks whether this range covers exactly one address.
+     *
+     * @return single Whether the prefix length is 128.
+     */
+    public boolean isSingleAddress() {
+        return length == 128;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof IpRange)) {
+            return false;
+        }
+        IpRange other = (IpRange) o;
+        return high == other.high && low == other.low && length == other.length;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) BanlistSnapshot.mix(high ^ Long.rotateLeft(low, 32) ^ length);
+    }
+
+    /**
+     * Returns the textual form this range was parsed from.
+     *
+     * @return text The textual form.
+     */
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * BanBot: A Discord bot and an HTTP server that manages the Templex banlist.
+ * Copyright (C) 2018  vtcakavsmoace
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.templex.banbot.banlist;
+
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A deduplicated view over several banlists, keyed by UUID. A player banned on more than one server appears once, with
+ * the entry chosen by the configured {@link ConflictRule}.
+ * <p>
+ * The view follows the diffs published by each banlist: only the UUIDs a diff touches are re-resolved against the
+ * other banlists, so a change to one server never re-merges the others. The merged view is split by UUID into shards,
+ * each an immutable {@link BanlistIndex}; a merge rebuilds only the shards holding a changed UUID and shares the rest
+ * with the previous revision, so a small change costs a small fraction of the merged banlist rather than all of it. As
+ * with {@link Banlist}, each result is published by swapping a single reference.
+ */
+public class MergedBanlist {
+
+    /**
+     * The logger instance for all instances of MergedBanlist. This serves solely for debug purposes.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(MergedBanlist.class);
+
+    /**
+     * The number of bits of a UUID's hash selecting its shard.
+     */
+    private static final int SHARD_BITS = 8;
+
+    /**
+     * The number of shards the merged view is split into.
+     */
+    private static final int SHARDS = 1 << SHARD_BITS;
+
+    /**
+     * Rules deciding which entry is kept when a UUID is banned on several servers.
+     */
+    public enum ConflictRule {
+        /**
+         * The most recently created ban wins; ties go to the longest expiry.
+         */
+        NEWEST,
+        /**
+         * The ban expiring last wins, permanent bans above all; ties go to the most recently created.
+         */
+        LONGEST_EXPIRY;
+
+        /**
+         * Parses a rule from its configuration name, ex. "newest" or "longest-expiry".
+         *
+         * @param name The configuration name.
+         * @return rule The rule.
+         * @throws IllegalArgumentException If no rule has the passed name.
+         */
+        public static ConflictRule fromName(@NonNull String name) {
+            return valueOf(name.trim().toUpperCase().replace('-', '_'));
+        }
+
+        /**
+         * Compares two entries under this rule.
+         *
+         * @param a The index of the first entry.
+         * @param i The position of the first entry.
+         * @param b The index of the second entry.
+         * @param j The position of the second entry.
+         * @return cmp A positive number if the first entry wins, a negative number if the second wins, zero on a tie.
+         */
+        int compare(BanlistIndex a, int i, BanlistIndex b, int j) {
+            int created = Long.compare(a.getCreated(i), b.getCreated(j));
+            int expires = Long.compare(a.getExpires(i), b.getExpires(j));
+            if (this == NEWEST) {
+                return created != 0 ? created : expires;
+            }
+            return expires != 0 ? expires : created;
+        }
+    }
+
+    /**
+     * The merged banlists, in priority order for exact ties.
+     */
+    private final List<Banlist> banlists;
+
+    /**
+     * The rule resolving conflicting entries.
+     */
+    private final ConflictRule rule;
+
+    /**
+     * The most recently published merge.
+     */
+    private final AtomicReference<State> state = new AtomicReference<>(new State(0, emptyShards()));
+
+    /**
+     * Main constructor for MergedBanlist. The passed banlists are followed from their next refresh onwards, so this
+     * should be created before they are first refreshed.
+     *
+     * @param banlists The banlists to merge, in priority order for exact ties.
+     * @param rule     The rule resolving conflicting entries.
+     */
+    public MergedBanlist(@NonNull List<Banlist> banlists, @NonNull ConflictRule rule) {
+        this.banlists = Collections.unmodifiableList(new ArrayList<>(banlists));
+        this.rule = rule;
+        for (Banlist banlist : this.banlists) {
+            banlist.addListener(this::apply);
+        }
+    }
+
+    /**
+     * Refreshes every merged banlist, merging whatever changed. This is cheap when nothing has changed.
+     *
+     * @throws IOException If any banlist file is unreadable or malformed.
+     */
+    public void refresh() throws IOException {
+        for (Banlist banlist : banlists) {
+            banlist.refresh();
+        }
+    }
+
+    /**
+     * Returns the shards of the current merge, which together hold every merged entry exactly once. The returned list
+     * and its indexes are immutable and stay valid after later merges.
+     *
+     * @return shards The merged shards.
+     */
+    public List<BanlistIndex> getShards() {
+        return state.get().shardList;
+    }
+
+    /**
+     * Finds the merged entry of the passed UUID.
+     *
+     * @param uuid The UUID to look up.
+     * @return entry The merged entry, or null if the UUID is banned on no server.
+     */
+    public BanEntry get(@NonNull UUID uuid) {
+        long msb = uuid.getMostSignificantBits(), lsb = uuid.getLeastSignificantBits();
+        BanlistIndex shard = state.get().shards[shardOf(msb, lsb)];
+        int position = shard.indexOf(msb, lsb);
+        return position < 0 ? null : shard.get(position);
+    }
+
+    /**
+     * Returns the number of merged entries.
+     *
+     * @return size The number of entries within the current merge.
+     */
+    public int size() {
+        return state.get().size;
+    }
+
+    /**
+     * Returns the revision of the current merge. This increases with every change to the merged view.
+     *
+     * @return revision The merge revision.
+     */
+    public long getRevision() {
+        return state.get().revision;
+    }
+
+    /**
+     * Returns the rule resolving conflicting entries.
+     *
+     * @return rule The conflict rule.
+     */
+    public ConflictRule getRule() {
+        return rule;
+    }
+
+    /**
+     * Merges a diff published by one of the banlists. Only the UUIDs within the diff are re-resolved; a full diff
+     * re-resolves the UUIDs of that banlist's previous and current revisions, which still leaves the others untouched.
+     * Only the shards holding a changed UUID are copied.
+     *
+     * @param diff The published diff.
+     */
+    private synchronized void apply(BanlistDiff diff) {
+        long started = System.nanoTime();
+        // the refreshing banlist has published its new index before notifying, so every index here is current
+        List<BanlistIndex> indexes = new ArrayList<>(banlists.size());
+        for (Banlist banlist : banlists) {
+            indexes.add(banlist.getIndex());
+        }
+        State current = state.get();
+        BanlistIndex.Builder[] builders = new BanlistIndex.Builder[SHARDS];
+        int touched = 0, changed = 0;
+        if (diff.isFull()) {
+            BanlistIndex previous = diff.getPrevious(), next = diff.getCurrent();
+            for (int i = 0; i < next.size(); i++, touched++) {
+                changed += resolve(next.getMostSignificantBits(i), next.getLeastSignificantBits(i), indexes, current.shards, builders);
+            }
+            for (int i = 0; i < previous.size(); i++) {
+                long msb = previous.getMostSignificantBits(i), lsb = previous.getLeastSignificantBits(i);
+                if (next.indexOf(msb, lsb) < 0) {
+                    changed += resolve(msb, lsb, indexes, current.shards, builders);
+                    touched++;
+                }
+            }
+        } else {
+            for (List<BanEntry> entries : Arrays.asList(diff.getAdded(), diff.getRemoved())) {
+                for (BanEntry entry : entries) {
+                    UUID uuid = entry.getUuid();
+                    changed += resolve(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), indexes, current.shards, builders);
+                    touched++;
+                }
+            }
+        }
+        if (changed == 0) {
+            return;
+        }
+        BanlistIndex[] shards = current.shards.clone();
+        int rebuilt = 0;
+        for (int i = 0; i < SHARDS; i++) {
+            if (builders[i] != null) {
+                shards[i] = builders[i].build();
+                rebuilt++;
+            }
+        }
+        State merged = new State(current.revision + 1, shards);
+        state.set(merged);
+        logger.info(String.format("Merged revision %d with %d entries from %d banlists (%d of %d touched changed, %d of %d shards rebuilt) in %d ms.",
+                merged.revision, merged.size, banlists.size(), changed, touched, rebuilt, SHARDS,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started)));
+    }
+
+    /**
+     * Re-resolves a single UUID against every banlist, recording any change to the merged entry.
+     *
+     * @param msb     The most significant bits of the UUID.
+     * @param lsb     The least significant bits of the UUID.
+     * @param indexes  The current index of every banlist.
+     * @param shards   The current merged shards.
+     * @param builders The builders of the next merged shards, created on the first change to each shard.
+     * @return changed 1 if the merged entry changed, else 0.
+     */
+    private int resolve(long msb, long lsb, List<BanlistIndex> indexes, BanlistIndex[] shards, BanlistIndex.Builder[] builders) {
+        BanlistIndex winner = null;
+        int winnerPosition = -1;
+        for (BanlistIndex index : indexes) {
+            int position = index.indexOf(msb, lsb);
+            if (position >= 0 && (winner == null || rule.compare(index, position, winner, winnerPosition) > 0)) {
+                winner = index;
+                winnerPosition = position;
+            }
+        }
+        int shard = shardOf(msb, lsb);
+        BanlistIndex merged = shards[shard];
+        int existing = merged.indexOf(msb, lsb);
+        if (winner == null ? existing < 0 : existing >= 0 && merged.entryEquals(existing, winner, winnerPosition)) {
+            return 0;
+        }
+        if (builders[shard] == null) {
+            builders[shard] = new BanlistIndex.Builder(merged.size() + 16).addAll(merged);
+        }
+        if (winner == null) {
+            builders[shard].remove(new UUID(msb, lsb));
+        } else {
+            builders[shard].add(winner, winnerPosition);
+        }
+        return 1;
+    }
+
+    /**
+     * Selects the shard of a UUID. The top bits of its hash are used, as the index tables of a shard place entries
+     * by the low bits.
+     *
+     * @param msb The most significant bits of the UUID.
+     * @param lsb The least significant bits of the UUID.
+     * @return shard The position of the shard.
+     */
+    private static int shardOf(long msb, long lsb) {
+        return (int) (BanlistSnapshot.mix(msb ^ Long.rotateLeft(lsb, 32)) >>> (64 - SHARD_BITS));
+    }
+
+    /**
+     * Creates the shards of an empty merge.
+     *
+     * @return shards Every shard, each empty.
+     */
+    private static BanlistIndex[] emptyShards() {
+        BanlistIndex[] shards = new BanlistIndex[SHARDS];
+        Arrays.fill(shards, BanlistIndex.EMPTY);
+        return shards;
+    }
+
+    /**
+     * A published merge.
+     */
+    private static final class State {
+
+        /**
+         * The revision of this merge.
+         */
+        private final long revision;
+
+        /**
+         * The merged shards. Never modified once published.
+         */
+        private final BanlistIndex[] shards;
+
+        /**
+         * An unmodifiable view of the merged shards.
+         */
+        private final List<BanlistIndex> shardList;
+
+        /**
+         * The number of merged entries.
+         */
+        private final int size;
+
+        /**
+         * Main constructor for State.
+         *
+         * @param revision The revision of this merge.
+         * @param shards   The merged shards.
+         */
+        private State(long revision, BanlistIndex[] shards) {
+            this.revision = revision;
+            this.shards = shards;
+            this.shardList = Collections.unmodifiableList(Arrays.asList(shards));
+            int size = 0;
+            for (BanlistIndex shard : shards) {
+                size += shard.size();
+            }
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * BanBot: A Discord bot and an HTTP server that manages the Templex banlist.
+ * Copyright (C) 2018  vtcakavsmoace
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.templex.banbot.discord;
+
+import co.templex.banbot.ServerSource;
+import lombok.NonNull;
+
+/**
+ * A banlist modification read from the log of a server source. Instances of this class are immutable.
+ */
+public final class BanEvent {
+
+    /**
+     * The kind of modification.
+     */
+    public enum Type {
+        /**
+         * A player was banned.
+         */
+        BAN,
+        /**
+         * A player was pardoned.
+         */
+        PARDON,
+        /**
+         * An address was banned.
+         */
+        IP_BAN,
+        /**
+         * An address was pardoned.
+         */
+        IP_PARDON
+    }
+
+    /**
+     * The source whose log this event was read from.
+     */
+    private final ServerSource source;
+
+    /**
+     * The kind of modification.
+     */
+    private final Type type;
+
+    /**
+     * The banned or pardoned player or address.
+     */
+    private final String subject;
+
+    /**
+     * The issuer of the modification.
+     */
+    private final String issuer;
+
+    /**
+     * The reason given for a ban, or null if none was logged.
+     */
+    private final String reason;
+
+    /**
+     * The time at which this event was read, in milliseconds since the epoch.
+     */
+    private final long timestamp;
+
+    /**
+     * Main constructor for BanEvent.
+     *
+     * @param source    The source whose log this event was read from.
+     * @param type      The kind of modification.
+     * @param subject   The banned or pardoned player or address.
+     * @param issuer    The issuer of the modification.
+     * @param reason    The reason given for a ban. May be null.
+     * @param timestamp The time at which this event was read.
+     */
+    public BanEvent(@NonNull ServerSource source, @NonNull Type type, @NonNull String subject, @NonNull String issuer,
+                    String reason, long timestamp) {
+        this.source = source;
+        this.type = type;
+        this.subject = subject;
+        this.issuer = issuer;
+        this.reason = reason;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Returns the source whose log this event was read from.
+     *
+     * @return source The source of this event.
+     */
+    public ServerSource getSource() {
+        return source;
+    }
+
+    /**
+     * Returns the kind of modification.
+     *
+     * @return type The kind of modification.
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the banned or pardoned player or address.
+     *
+     * @return subject The subject of this event.
+     */
+    public String getSubject() {
+        return subject;
+    }
+
+    /**
+     * Returns the issuer of the modification.
+     *
+     * @return issuer The issuer of this event.
+     */
+    public String getIssuer() {
+        return issuer;
+    }
+
+    /**
+     * Returns the reason given for a ban.
+     *
+     * @return reason The reason, or null if none was logged.
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * Returns the time at which this event was read.
+     *
+     * @return timestamp The time in milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BanEvent{source=%s, type=%s, subject=%s, issuer=%s}", source.getName(), type, subject, issuer);
+    }
+}
@@ -18,6 +18,8 @@
 
 package co.templex.banbot.discord;
 
+import co.templex.banbot.ServerSource;
+import co.templex.banbot.StartupTimer;
 import com.google.common.util.concurrent.FutureCallback;
 import de.btobastian.javacord.DiscordAPI;
 import de.btobastian.javacord.Javacord;
@@ -29,14 +31,21 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.awt.*;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -75,6 +84,12 @@ public class Bot {
      */
     private final AtomicReference<ExecutorService> exec = new AtomicReference<>();
 
+    /**
+     * This dispatches reports and Discord commands onto the executor service, keyed by player or address, so that
+     * those of one player keep their order while those of different players are handled in parallel.
+     */
+    private final AtomicReference<StripedExecutor> dispatcher = new AtomicReference<>();
+
     /**
      * The ID of the server that we wish to monitor.
      */
@@ -86,7 +101,48 @@ public class Bot {
     private final String targetChannelID;
 
     /**
-     * This is the log watcher instance which watches the specified logfile.
+     * The server sources whose logs are watched and whose bans are reported.
+     */
+    private final List<ServerSource> sources;
+
+    /**
+     * The report channel of each source, keyed by source name. Sources whose channel could not be found report to the
+     * target channel.
+     */
+    private final Map<String, ReportChannel> reportChannels = new ConcurrentHashMap<>();
+
+    /**
+     * The way in which the log watcher notices that a log has changed.
+     */
+    private final LogWatcher.Mode logWatchMode;
+
+    /**
+     * The shortest interval between polls of a polled log, in milliseconds.
+     */
+    private final long minLogPollInterval;
+
+    /**
+     * The longest interval between polls of a polled log, in milliseconds.
+     */
+    private final long maxLogPollInterval;
+
+    /**
+     * Whether the bot runs in lean mode, keeping no message cache and logging what remains cached at startup.
+     */
+    private final boolean lean;
+
+    /**
+     * The scheduler lifting the temporary bans issued through Discord.
+     */
+    private final TempBanScheduler tempBans;
+
+    /**
+     * The timer which startup phases are reported to.
+     */
+    private final StartupTimer startupTimer;
+
+    /**
+     * This is the log watcher instance which watches the logfiles of all sources.
      */
     private LogWatcher logWatcher;
 
@@ -101,6 +157,11 @@ public class Bot {
      */
     private final AtomicBoolean shutdown = new AtomicBoolean(false);
 
+    /**
+     * Whether the bot was started without connecting to Discord.
+     */
+    private volatile boolean detached;
+
     /**
      * Shutdown latch for the Bot instance.
      */
@@ -108,38 +169,82 @@ public class Bot {
 
     /**
      * Main constructor for the Bot class. A properties instance containing a valid Discord API token called "token".
+     * The server sources are read from the same properties; see {@link ServerSource#load(Properties)}.
      *
      * @param botProperties The properties for this Bot.
      * @param shutdownLatch The shutdown latch associated with this bot.
      */
     public Bot(@NonNull Properties botProperties, @NonNull CountDownLatch shutdownLatch) {
+        this(botProperties, ServerSource.load(botProperties), shutdownLatch);
+    }
+
+    /**
+     * Constructor for the Bot class watching the passed server sources. A properties instance containing a valid
+     * Discord API token called "token".
+     *
+     * @param botProperties The properties for this Bot.
+     * @param sources       The server sources to watch. Must not be empty.
+     * @param shutdownLatch The shutdown latch associated with this bot.
+     */
+    public Bot(@NonNull Properties botProperties, @NonNull List<ServerSource> sources, @NonNull CountDownLatch shutdownLatch) {
+        this(botProperties, sources, shutdownLatch, new StartupTimer());
+    }
+
+    /**
+     * Constructor for the Bot class watching the passed server sources and reporting its startup phases, the Discord
+     * connect, the loading of temporary bans and the attaching of the log watcher, to the passed timer.
+     *
+     * @param botProperties The properties for this Bot.
+     * @param sources       The server sources to watch. Must not be empty.
+     * @param shutdownLatch The shutdown latch associated with this bot.
+     * @param startupTimer  The timer which startup phases are reported to.
+     */
+    public Bot(@NonNull Properties botProperties, @NonNull List<ServerSource> sources, @NonNull CountDownLatch shutdownLatch,
+               @NonNull StartupTimer startupTimer) {
+        if (sources.isEmpty()) {
+            throw new IllegalArgumentException("At least one server source is required.");
+        }
         this.shutdownLatch = shutdownLatch;
+        this.sources = sources;
         this.api = Javacord.getApi(botProperties.getProperty("token"), true);
         this.targetServerID = Objects.requireNonNull(botProperties.getProperty("server-id", null));
         this.targetChannelID = Objects.requireNonNull(botProperties.getProperty("channel-id", null));
+        this.logWatchMode = LogWatcher.Mode.fromName(botProperties.getProperty("log-watch-mode", "auto"));
+        this.minLogPollInterval = Long.parseLong(botProperties.getProperty("log-poll-min-interval",
+                Long.toString(LogWatcher.DEFAULT_MIN_POLL_INTERVAL)));
+        this.maxLogPollInterval = Long.parseLong(botProperties.getProperty("log-poll-max-interval",
+                Long.toString(LogWatcher.DEFAULT_MAX_POLL_INTERVAL)));
+        this.lean = Boolean.parseBoolean(botProperties.getProperty("lean-mode", "false"));
+        this.tempBans = new TempBanScheduler(Paths.get(botProperties.getProperty("tempban-store", "tempbans.log")), sources);
+        this.startupTimer = startupTimer;
+        startupTimer.expect("discord connect", "tempban load", "log tail attach");
     }
 
     /**
      * Shutdown method for the bot. This should always be called upon shutdown.
      */
-    private void destroy() {
+    void destroy() {
         if (!shutdown.getAndSet(true)) {
             logger.info("Shutting down...");
-            api.disconnect();
+            if (!detached) {
+                api.disconnect();
+            }
             targetChannel.set(null);
             exec.get().shutdownNow();
-            logWatcher.shutdown();
+            tempBans.shutdown();
+            if (logWatcher != null) {
+                logWatcher.shutdown();
+            }
             shutdownLatch.countDown();
             logger.info("Successfully shut down.");
         }
     }
 
     /**
-     * Returns the ready state of the bot. This isn't used by our Main, but may be by others.
+     * Returns the ready state of the bot, which is reported on the "/ready" URI of the HTTP server by our Main.
      *
      * @return ready The ready state of the bot.
      */
-    @SuppressWarnings("unused")
     public boolean isReady() {
         return !shutdown.get() && exec.get() != null && api != null && targetChannel.get() != null;
     }
@@ -150,49 +255,218 @@ public class Bot {
      */
     public void start() {
         Runtime.getRuntime().addShutdownHook(new Thread(this::destroy)); // trap for shutdown
-        exec.set(Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()));
-        startTime.set(Calendar.getInstance());
+        startExecutor();
+        // the bot never reads past messages; those it deletes are held by reference
+        final int defaultMessageCacheSize = api.getMessageCacheSize();
+        if (lean) {
+            api.setMessageCacheSize(0);
+        }
+        final long connecting = System.nanoTime();
         api.connect(new FutureCallback<DiscordAPI>() {
             @Override
             public void onSuccess(DiscordAPI result) {
+                startupTimer.end("discord connect", connecting);
                 targetServer.set(api.getServerById(targetServerID));
                 targetChannel.set(api.getChannelById(targetChannelID));
                 String version = Bot.this.getClass().getPackage().getImplementationVersion();
                 EmbedBuilder emb = generateEmbedBuilder("Templex Ban Bot",
                         "Templex Ban Bot version " + version + " initialized.", null, null, null, Color.GREEN);
                 targetChannel.get().sendMessage("", emb);
-                api.registerListener(new CommandListener(targetChannel.get()));
+                Map<String, List<ServerSource>> commandSources = new HashMap<>();
+                for (ServerSource source : sources) {
+                    Channel channel = source.getChannelId() == null ? null : api.getChannelById(source.getChannelId());
+                    if (channel == null) {
+                        logger.warn(String.format("Channel of server %s not found, reporting to the target channel.", source.getName()));
+                        channel = targetChannel.get();
+                    }
+                    reportChannels.put(source.getName(), sendingTo(channel));
+                    commandSources.computeIfAbsent(channel.getId(), k -> new ArrayList<>()).add(source);
+                }
+                api.registerListener(new CommandListener(commandSources, dispatcher.get(), tempBans));
                 api.setGame("with the fates of users.");
-                logWatcher = new LogWatcher(Bot.this);
-                logWatcher.watch();
+                long attaching = System.nanoTime();
+                watchLogs();
+                startupTimer.end("log tail attach", attaching);
+                if (lean) {
+                    reportCacheFootprint(defaultMessageCacheSize);
+                }
                 logger.info("Templex Ban Bot version " + version + " initialized.");
             }
 
             @Override
             public void onFailure(Throwable t) {
                 logger.error("Failed to start the bot!", t);
+                startupTimer.fail("discord connect", connecting);
+                startupTimer.fail("log tail attach", connecting);
                 destroy();
             }
 
         });
+        // the journal is replayed while the connect is under way, as neither depends on the other
+        long loading = System.nanoTime();
+        try {
+            tempBans.start();
+            startupTimer.end("tempban load", loading);
+        } catch (IOException e) {
+            logger.error("Unable to load temporary bans, they will neither be issued nor lifted.", e);
+            startupTimer.fail("tempban load", loading);
+        }
     }
 
     /**
-     * Reports a ban to the target server.
+     * Starts the bot without connecting to Discord: the temporary bans are loaded and the logs of every source watched
+     * as by {@link #start()}, but every report is sent to the passed channel. This serves {@link LoadHarness}, which
+     * passes a stand-in for the report channel, so that reports take the path they would take to Discord.
+     *
+     * @param channel The channel every source reports to.
+     * @throws IOException If the temporary bans cannot be loaded.
+     */
+    void startDetached(@NonNull ReportChannel channel) throws IOException {
+        detached = true;
+        startExecutor();
+        for (ServerSource source : sources) {
+            reportChannels.put(source.getName(), channel);
+        }
+        tempBans.start();
+        watchLogs();
+    }
+
+    /**
+     * Creates the executor service and the dispatcher which reports and Discord commands run on.
+     */
+    private void startExecutor() {
+        int threads = Runtime.getRuntime().availableProcessors();
+        exec.set(Executors.newFixedThreadPool(threads));
+        dispatcher.set(new StripedExecutor(exec.get(), threads));
+        startTime.set(Calendar.getInstance());
+    }
+
+    /**
+     * Starts watching the logs of every source, reporting each banlist modification found.
+     */
+    private void watchLogs() {
+        logWatcher = new LogWatcher(sources, this::report, logWatchMode, minLogPollInterval, maxLogPollInterval);
+        logWatcher.watch();
+    }
+
+    /**
+     * Returns the scheduler lifting the temporary bans issued through Discord.
+     *
+     * @return tempBans The temporary ban scheduler.
+     */
+    TempBanScheduler getTempBans() {
+        return tempBans;
+    }
+
+    /**
+     * Logs what remains cached in lean mode. No saving is reported: the message cache lean mode disables only fills as
+     * messages arrive, so at startup it would be empty either way, and the heap figure logged is a plain reading.
+     * Javacord caches every server the bot is a member of, along with their channels and members, and offers no way to
+     * exclude any; only removing the bot from servers it does not need shrinks those caches, so their size is logged to
+     * make that decision.
+     *
+     * @param defaultMessageCacheSize The size the message cache would have had outside of lean mode.
+     */
+    private void reportCacheFootprint(int defaultMessageCacheSize) {
+        Runtime runtime = Runtime.getRuntime();
+        Server server = targetServer.get();
+        int servers = api.getServers().size();
+        int users = api.getUsers().size();
+        int members = server == null ? 0 : server.getMemberCount();
+        logger.info(String.format("Lean mode: message cache disabled (up to %d messages otherwise); %d servers, %d channels and %d users cached; %d MiB of heap in use.",
+                defaultMessageCacheSize, servers, api.getChannels().size(), users,
+                (runtime.totalMemory() - runtime.freeMemory()) >> 20));
+        if (servers > 1) {
+            logger.warn(String.format("Lean mode: %d servers besides the target are cached, holding %d users who are not members of the target. Remove the bot from servers it does not need to free them.",
+                    servers - 1, Math.max(0, users - members)));
+        }
+    }
+
+    /**
+     * Reports a banlist modification to the report channel of its source. The report is made on the executor service;
+     * reports of the same player or address are made in the order they were passed here.
+     *
+     * @param event The modification to report.
+     */
+    public void report(@NonNull BanEvent event) {
+        StripedExecutor dispatcher = this.dispatcher.get();
+        if (dispatcher == null) {
+            deliver(event);
+            return;
+        }
+        try {
+            dispatcher.execute(event.getSubject(), () -> deliver(event));
+        } catch (RejectedExecutionException e) {
+            logger.warn(String.format("Dropped %s, as the bot is shutting down.", event));
+        }
+    }
+
+    /**
+     * Reports a banlist modification to the report channel of its source on the calling thread.
+     *
+     * @param event The modification to report.
+     */
+    private void deliver(BanEvent event) {
+        if (event.getType() == BanEvent.Type.PARDON || event.getType() == BanEvent.Type.BAN
+                && !TempBanScheduler.isTemporary(event.getReason())) {
+            try {
+                if (tempBans.cancel(event.getSource(), event.getSubject())) {
+                    logger.info(String.format("Cancelled the temporary ban of %s on %s.", event.getSubject(), event.getSource().getName()));
+                }
+            } catch (IOException e) {
+                logger.error(String.format("Unable to cancel the temporary ban of %s.", event.getSubject()), e);
+            }
+        }
+        ReportChannel channel = reportChannels.get(event.getSource().getName());
+        if (channel == null) {
+            channel = sendingTo(targetChannel.get());
+        }
+        String time = Instant.ofEpochMilli(event.getTimestamp()).toString();
+        String issuer = sources.size() > 1 ? String.format("%s on %s", event.getIssuer(), event.getSource().getName()) : event.getIssuer();
+        switch (event.getType()) {
+            case BAN:
+                reportBan(channel, event, issuer, time);
+                break;
+            case PARDON:
+                reportPardon(channel, event, issuer, time);
+                break;
+            case IP_BAN:
+                reportIpBan(channel, event, issuer, time);
+                break;
+            case IP_PARDON:
+                reportIpPardon(channel, event, issuer, time);
+                break;
+        }
+    }
+
+    /**
+     * Wraps a Discord channel as a report channel.
+     *
+     * @param channel The Discord channel.
+     * @return channel The report channel sending to it.
+     */
+    private static ReportChannel sendingTo(Channel channel) {
+        return (event, report) -> channel.sendMessage("", report);
+    }
+
+    /**
+     * Reports a ban to the passed channel.
      * <p>
      * Note that this will very likely change locations during the refactoring process.
      *
-     * @param banned The banned user.
-     * @param banner The banning user.
-     * @param reason The reason for the ban.
+     * @param channel The channel to report to.
+     * @param event   The ban, whose subject is the banned user.
+     * @param banner  The banning user.
+     * @param time    The time of the ban.
      */
-    public void reportBan(String banned, String banner, String reason) {
-        targetChannel.get().sendMessage("", generateEmbedBuilder(
+    private void reportBan(ReportChannel channel, BanEvent event, String banner, String time) {
+        String banned = event.getSubject(), reason = event.getReason();
+        channel.send(event, generateEmbedBuilder(
                 "Ban Report",
                 String.format(
                         "User %s was banned on %s with reason \"%s\".",
                         banned,
-                        ZonedDateTime.now().format(DateTimeFormatter.ISO_INSTANT),
+                        time,
                         reason
                 ),
                 String.format(
@@ -207,20 +481,23 @@ public class Bot {
     }
 
     /**
-     * Reports a pardon to the target server.
+     * Reports a pardon to the passed channel.
      * <p>
      * Note that this will very likely change locations during the refactoring process.
      *
-     * @param pardoned The pardoned user.
+     * @param channel  The channel to report to.
+     * @param event    The pardon, whose subject is the pardoned user.
      * @param pardoner The pardoning user.
+     * @param time     The time of the pardon.
      */
-    public void reportPardon(String pardoned, String pardoner) {
-        targetChannel.get().sendMessage("", generateEmbedBuilder(
+    private void reportPardon(ReportChannel channel, BanEvent event, String pardoner, String time) {
+        String pardoned = event.getSubject();
+        channel.send(event, generateEmbedBuilder(
                 "Pardon Report",
                 String.format(
                         "User %s was pardoned on %s.",
                         pardoned,
-                        ZonedDateTime.now().format(DateTimeFormatter.ISO_INSTANT)
+                        time
                 ),
                 String.format(
                         "Pardon issued by %s",
@@ -233,4 +510,81 @@ public class Bot {
         logger.info(String.format("Reported pardon of user %s", pardoned));
     }
 
+    /**
+     * Reports an IP ban to the passed channel.
+     *
+     * @param channel The channel to report to.
+     * @param event   The IP ban, whose subject is the banned address. Its reason may be null, as older servers do not
+     *                log it.
+     * @param banner  The banning user.
+     * @param time    The time of the ban.
+     */
+    private void reportIpBan(ReportChannel channel, BanEvent event, String banner, String time) {
+        String address = event.getSubject(), reason = event.getReason();
+        channel.send(event, generateEmbedBuilder(
+                "IP Ban Report",
+                reason == null ? String.format(
+                        "Address %s was banned on %s.",
+                        address,
+                        time
+                ) : String.format(
+                        "Address %s was banned on %s with reason \"%s\".",
+                        address,
+                        time,
+                        reason
+                ),
+                String.format(
+                        "Ban issued by %s",
+                        banner
+                ),
+                null,
+                null,
+                Color.RED
+        ));
+        logger.info(String.format("Reported ban of address %s", address));
+    }
+
+    /**
+     * Reports an IP pardon to the passed channel.
+     *
+     * @param channel  The channel to report to.
+     * @param event    The IP pardon, whose subject is the pardoned address.
+     * @param pardoner The pardoning user.
+     * @param time     The time of the pardon.
+     */
+    private void reportIpPardon(ReportChannel channel, BanEvent event, String pardoner, String time) {
+        String address = event.getSubject();
+        channel.send(event, generateEmbedBuilder(
+                "IP Pardon Report",
+                String.format(
+                        "Address %s was pardoned on %s.",
+                        address,
+                        time
+                ),
+                String.format(
+                        "Pardon issued by %s",
+                        pardoner
+                ),
+                null,
+                null,
+                Color.YELLOW
+        ));
+        logger.info(String.format("Reported pardon of address %s", address));
+    }
+
+    /**
+     * Where the reports of a source are sent: its Discord channel, or a stand-in for one.
+     */
+    @FunctionalInterface
+    interface ReportChannel {
+
+        /**
+         * Sends a report.
+         *
+         * @param event  The reported modification.
+         * @param report The report.
+         */
+        void send(BanEvent event, EmbedBuilder report);
+    }
+
 }
@@ -18,10 +18,12 @@
 
 package co.templex.banbot.discord;
 
+import co.templex.banbot.ServerSource;
 import de.btobastian.javacord.DiscordAPI;
 import de.btobastian.javacord.entities.Channel;
 import de.btobastian.javacord.entities.message.Message;
 import de.btobastian.javacord.listener.message.MessageCreateListener;
+import lombok.NonNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,6 +31,11 @@ import java.awt.*;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import static co.templex.banbot.Util.generateEmbedBuilder;
@@ -36,8 +43,13 @@ import static co.templex.banbot.Util.generateEmbedBuilder;
 /**
  * Listener implementation used by the Discord bot. This hooks into the Discord API instance as a MessageCreateListener.
  * <p>
- * This particular implementation listens for the .ban or .pardon commands in the channel designated for in-discord
- * banning.
+ * This particular implementation listens for the .ban, .tempban or .pardon commands in the channel designated for
+ * in-discord banning.
+ * <p>
+ * Every message the bot can see passes through here on the gateway thread, so messages are rejected by their first
+ * character and their channel before anything else is looked at, commands are looked up by name in a table, and the
+ * commands themselves run on the bot's executor, keyed by player like ban reports, so slow console writes never hold
+ * up the gateway.
  * <p>
  * Note that this will very likely change locations during the refactoring process.
  */
@@ -54,9 +66,30 @@ class CommandListener implements MessageCreateListener {
     private static final int SELF_DELETION_DELAY = 10;
 
     /**
-     * The channel which we are reading from.
+     * The character every command starts with.
+     */
+    private static final char PREFIX = '.';
+
+    /**
+     * The server sources commanded from each channel, keyed by channel ID. A command issued within a channel is
+     * written to the console of every source listed for it.
+     */
+    private final Map<String, List<ServerSource>> sources;
+
+    /**
+     * The executor on which commands are run, keyed by player.
+     */
+    private final StripedExecutor executor;
+
+    /**
+     * The scheduler lifting temporary bans.
      */
-    private final Channel channel;
+    private final TempBanScheduler tempBans;
+
+    /**
+     * The commands understood, keyed by name.
+     */
+    private final Map<String, Command> commands = new HashMap<>();
 
     /**
      * The message handler created for this listener.
@@ -64,75 +97,245 @@ class CommandListener implements MessageCreateListener {
     private final MessageHandler messageHandler;
 
     /**
-     * The main constructor for the CommandListener class. Requires a channel to listen/write to.
+     * The main constructor for the CommandListener class. Requires the channels to listen/write to.
      *
-     * @param channel The channel to listen/write to.
+     * @param sources  The server sources commanded from each channel, keyed by channel ID.
+     * @param executor The executor on which commands are run, keyed by player.
+     * @param tempBans The scheduler lifting temporary bans.
      */
-    CommandListener(Channel channel) {
-        this.channel = channel;
+    CommandListener(@NonNull Map<String, List<ServerSource>> sources, @NonNull StripedExecutor executor,
+                    @NonNull TempBanScheduler tempBans) {
+        this.sources = sources;
+        this.executor = executor;
+        this.tempBans = tempBans;
+        register(new Command("ban", "Ban", 2, this::ban));
+        register(new Command("tempban", "Temporary Ban", 3, this::tempBan));
+        register(new Command("pardon", "Pardon", 2, this::pardon));
         messageHandler = new MessageHandler();
     }
 
+    /**
+     * Adds a command to the command table.
+     *
+     * @param command The command to add.
+     */
+    private void register(Command command) {
+        commands.put(command.name, command);
+    }
+
     /**
      * Implementation of the MessageCreateListener#onMessageCreate method. This particular implementation listens
-     * for the .ban or .pardon commands in the channel designated for in-discord banning.
+     * for the .ban, .tempban or .pardon commands in the channel designated for in-discord banning.
      *
      * @param discordAPI The Discord API instance associated with this event.
      * @param message    The message associated with this event.
      */
     @Override
     public void onMessageCreate(DiscordAPI discordAPI, Message message) {
-        if (message.getChannelReceiver().getId().equals(channel.getId()) && (message.getContent().startsWith(".ban ") || message.getContent().startsWith(".pardon "))) {
-            messageHandler.deleteMessage(message, 5, TimeUnit.SECONDS);
-            String command = message.getContent().substring(1).replaceAll("\'", "\"'\"'\"");
-            String[] commandSplit = command.split(" ");
-            boolean commandType = commandSplit[0].equals("ban");
-            if (commandSplit.length < 2) { // shouldn't happen
-                messageHandler.sendSelfDeletingMessage(message.getChannelReceiver(), generateEmbedBuilder(
-                        String.format("Minecraft %s Error", commandType ? "Ban" : "Pardon"),
-                        "Insufficient arguments.",
-                        null,
-                        null,
-                        null,
-                        Color.RED
-                ), SELF_DELETION_DELAY, TimeUnit.SECONDS);
-                return;
+        String content = message.getContent();
+        if (content.isEmpty() || content.charAt(0) != PREFIX) {
+            return;
+        }
+        Channel channel = message.getChannelReceiver();
+        List<ServerSource> targets = channel == null ? null : sources.get(channel.getId());
+        if (targets == null) {
+            return;
+        }
+        int end = content.indexOf(' ');
+        Command command = end < 0 ? null : commands.get(content.substring(1, end));
+        if (command == null) {
+            return;
+        }
+        messageHandler.deleteMessage(message, 5, TimeUnit.SECONDS);
+        String[] arguments = content.substring(1).split(" ");
+        if (arguments.length < command.arguments) {
+            messageHandler.sendSelfDeletingMessage(channel, generateEmbedBuilder(
+                    String.format("Minecraft %s Error", command.title),
+                    "Insufficient arguments.",
+                    null,
+                    null,
+                    null,
+                    Color.RED
+            ), SELF_DELETION_DELAY, TimeUnit.SECONDS);
+            return;
+        }
+        try {
+            executor.execute(arguments[1], () -> execute(command, channel, targets, arguments));
+        } catch (RejectedExecutionException e) {
+            logger.warn(String.format("Dropped command \"%s\", as the bot is shutting down.", content));
+        }
+    }
+
+    /**
+     * Runs a command against every target source, reporting the outcome to the channel it was issued in.
+     *
+     * @param command   The command issued.
+     * @param channel   The channel the command was issued in.
+     * @param targets   The sources to run the command against.
+     * @param arguments The command name followed by its arguments, the first of which is the player.
+     */
+    private void execute(Command command, Channel channel, List<ServerSource> targets, String[] arguments) {
+        String player = arguments[1];
+        String outcome;
+        try {
+            if (!TempBanScheduler.isPlayerName(player)) {
+                // checked before anything reaches the console or the temporary ban journal
+                throw new IllegalArgumentException(String.format("Invalid player name \"%s\".", player));
             }
-            String player = commandSplit[1];
-            try {
-                String executedCommand = String.format("./write_to_server %s\\n", command);
-                logger.info(String.format("Executing raw command \"%s\"", executedCommand));
-                Runtime.getRuntime().exec(executedCommand);
-            } catch (IOException e) {
-                logger.error("Unable to execute ban command.", e);
-                String exception;
-                try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
-                    try (PrintStream stream = new PrintStream(outputStream)) {
-                        e.printStackTrace(stream);
-                        exception = outputStream.toString();
-                    }
-                } catch (IOException e1) {
-                    e1.printStackTrace();
-                    exception = null;
+            outcome = command.action.run(targets, arguments);
+        } catch (IllegalArgumentException e) {
+            messageHandler.sendSelfDeletingMessage(channel, generateEmbedBuilder(
+                    String.format("Minecraft %s Error", command.title),
+                    e.getMessage(),
+                    null,
+                    null,
+                    null,
+                    Color.RED
+            ), SELF_DELETION_DELAY, TimeUnit.SECONDS);
+            return;
+        } catch (IOException e) {
+            logger.error(String.format("Unable to execute %s command.", command.name), e);
+            String exception;
+            try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
+                try (PrintStream stream = new PrintStream(outputStream)) {
+                    e.printStackTrace(stream);
+                    exception = outputStream.toString();
                 }
-                messageHandler.sendSelfDeletingMessage(message.getChannelReceiver(), generateEmbedBuilder(
-                        String.format("Minecraft %s Error", commandType ? "Ban" : "Pardon"),
-                        String.format("Was not able to %s %s due to process exception:\n%s", commandType ? "ban" : "pardon", player, exception),
-                        null,
-                        null,
-                        null,
-                        Color.RED
-                ), SELF_DELETION_DELAY, TimeUnit.SECONDS);
-                return;
+            } catch (IOException e1) {
+                e1.printStackTrace();
+                exception = null;
             }
-            messageHandler.sendSelfDeletingMessage(message.getChannelReceiver(), generateEmbedBuilder(
-                    String.format("Minecraft %s", commandType ? "Ban" : "Pardon"),
-                    String.format("Successfully %s %s.", commandType ? "banned" : "pardoned", player),
+            messageHandler.sendSelfDeletingMessage(channel, generateEmbedBuilder(
+                    String.format("Minecraft %s Error", command.title),
+                    String.format("Was not able to %s %s due to process exception:\n%s", command.name, player, exception),
                     null,
                     null,
                     null,
-                    Color.GREEN
+                    Color.RED
             ), SELF_DELETION_DELAY, TimeUnit.SECONDS);
+            return;
+        }
+        messageHandler.sendSelfDeletingMessage(channel, generateEmbedBuilder(
+                String.format("Minecraft %s", command.title),
+                outcome,
+                null,
+                null,
+                null,
+                Color.GREEN
+        ), SELF_DELETION_DELAY, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Bans a player permanently, cancelling any temporary ban.
+     *
+     * @param targets   The sources to ban the player on.
+     * @param arguments The command name, the player and an optional reason.
+     * @return outcome The description of the outcome.
+     * @throws IOException If the ban cannot be written to a console.
+     */
+    private String ban(List<ServerSource> targets, String[] arguments) throws IOException {
+        for (ServerSource source : targets) {
+            tempBans.cancel(source, arguments[1]);
+            source.writeToConsole(String.join(" ", arguments));
+        }
+        return String.format("Successfully banned %s.", arguments[1]);
+    }
+
+    /**
+     * Bans a player until the passed duration has elapsed. The pardon is scheduled before the ban is issued, so a ban
+     * is never left without its pardon.
+     *
+     * @param targets   The sources to ban the player on.
+     * @param arguments The command name, the player, the duration and an optional reason.
+     * @return outcome The description of the outcome.
+     * @throws IOException If the pardon cannot be scheduled or the ban cannot be written to a console.
+     */
+    private String tempBan(List<ServerSource> targets, String[] arguments) throws IOException {
+        long expiresAt = System.currentTimeMillis() + TempBanScheduler.parseDuration(arguments[2]);
+        StringBuilder reason = new StringBuilder();
+        for (int i = 3; i < arguments.length; i++) {
+            reason.append(arguments[i]).append(' ');
+        }
+        String line = String.format("ban %s %s", arguments[1], TempBanScheduler.reason(reason.toString().trim(), expiresAt));
+        for (ServerSource source : targets) {
+            tempBans.schedule(source, arguments[1], expiresAt);
+            source.writeToConsole(line);
+        }
+        return String.format("Successfully banned %s until %s.", arguments[1], Instant.ofEpochMilli(expiresAt));
+    }
+
+    /**
+     * Pardons a player, cancelling any temporary ban.
+     *
+     * @param targets   The sources to pardon the player on.
+     * @param arguments The command name and the player.
+     * @return outcome The description of the outcome.
+     * @throws IOException If the pardon cannot be written to a console.
+     */
+    private String pardon(List<ServerSource> targets, String[] arguments) throws IOException {
+        for (ServerSource source : targets) {
+            tempBans.cancel(source, arguments[1]);
+            source.writeToConsole(String.join(" ", arguments));
+        }
+        return String.format("Successfully pardoned %s.", arguments[1]);
+    }
+
+    /**
+     * The behavior of a command.
+     */
+    @FunctionalInterface
+    private interface Action {
+
+        /**
+         * Runs the command against the passed sources.
+         *
+         * @param targets   The sources to run the command against.
+         * @param arguments The command name followed by its arguments, the first of which is the player.
+         * @return outcome The description of the outcome, reported to the issuing channel.
+         * @throws IOException              If the command cannot be carried out.
+         * @throws IllegalArgumentException If the arguments are invalid. The message is reported to the channel.
+         */
+        String run(List<ServerSource> targets, String[] arguments) throws IOException;
+    }
+
+    /**
+     * A command understood by this listener.
+     */
+    private static final class Command {
+
+        /**
+         * The name of the command, as typed after the prefix.
+         */
+        private final String name;
+
+        /**
+         * The title of the command's reports, ex. "Ban".
+         */
+        private final String title;
+
+        /**
+         * The number of words the command requires, including its name.
+         */
+        private final int arguments;
+
+        /**
+         * The behavior of the command.
+         */
+        private final Action action;
+
+        /**
+         * Main constructor for Command.
+         *
+         * @param name      The name of the command, as typed after the prefix.
+         * @param title     The title of the command's reports.
+         * @param arguments The number of words the command requires, including its name.
+         * @param action    The behavior of the command.
+         */
+        private Command(String name, String title, int arguments, Action action) {
+            this.name = name;
+            this.title = title;
+            this.arguments = arguments;
+            this.action = action;
         }
     }
 }
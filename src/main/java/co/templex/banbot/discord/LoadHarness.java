@@ -0,0 +1,564 @@
+/*
+ * BanBot: A Discord bot and an HTTP server that manages the Templex banlist.
+ * Copyright (C) 2018  vtcakavsmoace
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.templex.banbot.discord;
+
+import co.templex.banbot.ServerSource;
+import de.btobastian.javacord.entities.message.embed.EmbedBuilder;
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A load test of the path from a server log to a ban report, without Discord. Lines are written to the latest.log of
+ * one or more temporary server directories at a set rate, and a {@link Bot} started without Discord watches them and
+ * reports what it finds as it would to Discord, cancelling temporary bans along the way, but to a stand-in for the
+ * report channel. The throughput and the latency from writing a line to its report are logged at the end.
+ * <p>
+ * Lines are either synthetic, a mix of chat and bans, pardons and IP bans, or replayed from a captured log. Options are
+ * passed as key=value arguments:
+ * <pre>
+ * lines         the number of lines written (default 100000; a replayed log is written once, up to this many lines)
+ * rate          the lines written per second across all sources, or 0 for as fast as possible (default 10000)
+ * event-ratio   the share of synthetic lines which are bans, pardons or IP bans (default 0.1)
+ * players       the number of distinct synthetic players (default 10000)
+ * sources       the number of server sources written to in turn (default 1)
+ * rotate-every  the number of lines after which a latest.log is rotated, or 0 to never rotate (default 0)
+ * replay        a captured log to replay rather than writing synthetic lines
+ * mode          the log watch mode, "auto", "watch" or "poll" (default auto)
+ * tempbans      the number of synthetic players per source given a temporary ban beforehand, which later bans and
+ *               pardons of them cancel (default 1000)
+ * report-delay  the milliseconds each report takes to send, standing in for Discord (default 0)
+ * directory     the directory the server directories are created in (default a new temporary directory)
+ * </pre>
+ * The process exits with status 1 if any event was not reported within ten seconds of the last write, so that it may
+ * gate a build. Run it with the loadHarness Gradle task, ex. "gradlew loadHarness -PharnessArgs='rate=50000 sources=4'".
+ */
+public final class LoadHarness {
+
+    /**
+     * The logger instance for all instances of LoadHarness. This serves solely for debug purposes.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(LoadHarness.class);
+
+    /**
+     * The timestamp format of log lines, ex. "03:05:13".
+     */
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    /**
+     * The longest time lines are held back to be written together, in nanoseconds.
+     */
+    private static final long BATCH_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * The time to wait for outstanding reports after the last write, in milliseconds.
+     */
+    private static final long DRAIN_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+
+    /**
+     * The name of the player whose ban is written until the watcher reports it, before the measured lines.
+     */
+    private static final String PROBE = "harness_probe";
+
+    /**
+     * The number of lines written.
+     */
+    private final int lines;
+
+    /**
+     * The lines written per second, or 0 for as fast as possible.
+     */
+    private final double rate;
+
+    /**
+     * The share of synthetic lines which are banlist modifications.
+     */
+    private final double eventRatio;
+
+    /**
+     * The number of distinct synthetic players.
+     */
+    private final int players;
+
+    /**
+     * The number of lines after which a latest.log is rotated, or 0 to never rotate.
+     */
+    private final int rotateEvery;
+
+    /**
+     * The captured log to replay, or null to write synthetic lines.
+     */
+    private final Path replay;
+
+    /**
+     * The log watch mode.
+     */
+    private final LogWatcher.Mode mode;
+
+    /**
+     * The number of synthetic players per source given a temporary ban beforehand.
+     */
+    private final int tempBans;
+
+    /**
+     * The milliseconds each report takes to send.
+     */
+    private final long reportDelay;
+
+    /**
+     * The directory the server directories are created in.
+     */
+    private final Path directory;
+
+    /**
+     * The server sources written to.
+     */
+    private final List<ServerSource> sources = new ArrayList<>();
+
+    /**
+     * The write times of lines yet to be reported, in nanoseconds, oldest first and keyed by {@link #key(BanEvent)}.
+     * Guarded by itself.
+     */
+    private final Map<String, ArrayDeque<Long>> outstanding = new HashMap<>();
+
+    /**
+     * The latency of every report, in nanoseconds, in the order reported.
+     */
+    private long[] latencies = new long[1024];
+
+    /**
+     * The number of latencies recorded. Guarded by this harness, as are the latencies.
+     */
+    private int reported;
+
+    /**
+     * Whether a probe ban has been reported, showing that the watcher has attached to the logs.
+     */
+    private volatile boolean attached;
+
+    /**
+     * The number of reports which matched no written line.
+     */
+    private final AtomicInteger unexpected = new AtomicInteger();
+
+    /**
+     * Main constructor for LoadHarness.
+     *
+     * @param options The options; see the class documentation.
+     * @throws IOException If the server directories cannot be created.
+     */
+    public LoadHarness(@NonNull Properties options) throws IOException {
+        this.lines = Integer.parseInt(options.getProperty("lines", "100000"));
+        this.rate = Double.parseDouble(options.getProperty("rate", "10000"));
+        this.eventRatio = Double.parseDouble(options.getProperty("event-ratio", "0.1"));
+        this.players = Integer.parseInt(options.getProperty("players", "10000"));
+        this.rotateEvery = Integer.parseInt(options.getProperty("rotate-every", "0"));
+        this.replay = options.getProperty("replay") == null ? null : Paths.get(options.getProperty("replay"));
+        this.mode = LogWatcher.Mode.fromName(options.getProperty("mode", "auto"));
+        this.tempBans = Integer.parseInt(options.getProperty("tempbans", "1000"));
+        this.reportDelay = Long.parseLong(options.getProperty("report-delay", "0"));
+        this.directory = options.getProperty("directory") == null
+                ? Files.createTempDirectory("banbot-harness")
+                : Paths.get(options.getProperty("directory"));
+        int sourceCount = Integer.parseInt(options.getProperty("sources", "1"));
+        for (int i = 0; i < sourceCount; i++) {
+            ServerSource source = ServerSource.of("server-" + i, directory.resolve("server-" + i), null);
+            Files.createDirectories(source.getLogDirectory());
+            Files.write(source.getLogDirectory().resolve(LogTail.LATEST_LOG), new byte[0]);
+            sources.add(source);
+        }
+        logger.info(String.format("Writing %s to %d sources within %s.", replay == null ? "synthetic lines" : replay,
+                sources.size(), directory));
+    }
+
+    /**
+     * Runs the harness with the passed options, exiting with status 1 if any event went unreported.
+     *
+     * @param args The options as key=value pairs; see the class documentation.
+     * @throws IOException          If the logs cannot be written or the replayed log cannot be read.
+     * @throws InterruptedException If interrupted while waiting for reports.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Properties options = new Properties();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException(String.format("Expected key=value, got \"%s\".", arg));
+            }
+            options.setProperty(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        System.exit(new LoadHarness(options).run() ? 0 : 1);
+    }
+
+    /**
+     * Writes every line, waits for their reports and logs the results.
+     *
+     * @return complete Whether every event was reported.
+     * @throws IOException          If the logs cannot be written or the replayed log cannot be read.
+     * @throws InterruptedException If interrupted while waiting for reports.
+     */
+    public boolean run() throws IOException, InterruptedException {
+        Properties properties = new Properties();
+        properties.setProperty("token", "load-harness");
+        properties.setProperty("server-id", "0");
+        properties.setProperty("channel-id", "0");
+        properties.setProperty("log-watch-mode", mode.name().toLowerCase());
+        properties.setProperty("tempban-store", directory.resolve("tempbans.log").toString());
+        Bot bot = new Bot(properties, sources, new CountDownLatch(1));
+        Writer[] writers = new Writer[sources.size()];
+        try {
+            for (int i = 0; i < writers.length; i++) {
+                writers[i] = new Writer(sources.get(i));
+            }
+            bot.startDetached(this::receive);
+            for (ServerSource source : sources) {
+                for (int i = 0; i < Math.min(tempBans, players); i++) {
+                    bot.getTempBans().schedule(source, "p" + i, System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1));
+                }
+            }
+            int pendingTempBans = bot.getTempBans().size();
+            awaitAttached(writers[0]);
+            long started = System.nanoTime();
+            int written = 0, events = 0;
+            try (BufferedReader reader = replay == null ? null : Files.newBufferedReader(replay, StandardCharsets.UTF_8)) {
+                Random random = new Random(0);
+                long batchStarted = System.nanoTime();
+                for (String line; written < lines && (line = reader == null ? synthesize(random) : reader.readLine()) != null; written++) {
+                    Writer writer = writers[written % writers.length];
+                    BanEvent event = LogWatcher.parseLine(writer.source, line);
+                    if (event != null) {
+                        writer.pending.add(key(event));
+                        events++;
+                    }
+                    writer.buffer.append(line).append('\n');
+                    long now = System.nanoTime();
+                    if (now - batchStarted >= BATCH_NANOS || writer.buffer.length() > 65536) {
+                        pace(started, written + 1);
+                        for (Writer each : writers) {
+                            each.flush();
+                        }
+                        batchStarted = System.nanoTime();
+                    }
+                }
+            }
+            for (Writer writer : writers) {
+                writer.flush();
+            }
+            long writing = System.nanoTime() - started;
+            boolean complete = awaitReports(events);
+            long elapsed = System.nanoTime() - started;
+            report(written, events, writing, elapsed);
+            logger.info(String.format("Cancelled %d of %d temporary bans.", pendingTempBans - bot.getTempBans().size(), pendingTempBans));
+            return complete;
+        } finally {
+            bot.destroy();
+            for (Writer writer : writers) {
+                if (writer != null) {
+                    writer.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a probe ban until the watcher reports it, so that no measured line is written before the watcher has
+     * attached to the logs.
+     *
+     * @param writer The writer of the first source.
+     * @throws IOException          If the log cannot be written.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private void awaitAttached(Writer writer) throws IOException, InterruptedException {
+        String probe = String.format("[%s] [Server thread/INFO]: Banned %s: Probe", LocalTime.now().format(TIME), PROBE);
+        while (!attached) {
+            writer.buffer.append(probe).append('\n');
+            writer.flush();
+            Thread.sleep(100);
+        }
+    }
+
+    /**
+     * Sleeps until the passed number of lines is due at the configured rate.
+     *
+     * @param started The time writing started, in nanoseconds.
+     * @param written The number of lines written once the pending ones are.
+     */
+    private void pace(long started, int written) {
+        if (rate <= 0) {
+            return;
+        }
+        long due = started + (long) (written * 1e9 / rate);
+        for (long now; (now = System.nanoTime()) < due; ) {
+            LockSupport.parkNanos(due - now);
+        }
+    }
+
+    /**
+     * Synthesizes a log line: chat, or with the configured probability a ban, an operator ban, a pardon or an IP ban of
+     * a random player.
+     *
+     * @param random The random source.
+     * @return line The line.
+     */
+    private String synthesize(Random random) {
+        String prefix = String.format("[%s] [Server thread/INFO]: ", LocalTime.now().format(TIME));
+        String player = "p" + random.nextInt(players);
+        if (random.nextDouble() >= eventRatio) {
+            return String.format("%s<%s> the quick brown fox jumps over the lazy dog", prefix, player);
+        }
+        int kind = random.nextInt(10);
+        if (kind < 5) {
+            return String.format("%sBanned %s: Load test", prefix, player);
+        } else if (kind < 7) {
+            return String.format("%s[Moderator: Banned %s: Load test]", prefix, player);
+        } else if (kind < 9) {
+            return String.format("%sUnbanned %s", prefix, player);
+        }
+        return String.format("%sBanned IP address 10.%d.%d.%d", prefix, random.nextInt(256), random.nextInt(256), random.nextInt(256));
+    }
+
+    /**
+     * The stand-in for the report channel: records the latency of a report, taking the configured report delay.
+     *
+     * @param event  The reported event.
+     * @param report The report sent by the bot.
+     */
+    private void receive(BanEvent event, EmbedBuilder report) {
+        if (reportDelay > 0) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(reportDelay));
+        }
+        long now = System.nanoTime();
+        if (PROBE.equals(event.getSubject())) {
+            attached = true;
+            return;
+        }
+        Long writtenAt;
+        synchronized (outstanding) {
+            ArrayDeque<Long> times = outstanding.get(key(event));
+            writtenAt = times == null ? null : times.poll();
+            if (times != null && times.isEmpty()) {
+                outstanding.remove(key(event));
+            }
+        }
+        synchronized (this) {
+            if (writtenAt == null) {
+                unexpected.incrementAndGet();
+                return;
+            }
+            if (reported == latencies.length) {
+                latencies = Arrays.copyOf(latencies, reported * 2);
+            }
+            latencies[reported++] = now - writtenAt;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Waits until the passed number of events has been reported, or until no report has arrived for a while.
+     *
+     * @param events The number of events written.
+     * @return complete Whether every event was reported.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private synchronized boolean awaitReports(int events) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT;
+        for (long remaining; reported < events && (remaining = deadline - System.currentTimeMillis()) > 0; ) {
+            int before = reported;
+            wait(remaining);
+            if (reported > before) {
+                deadline = System.currentTimeMillis() + DRAIN_TIMEOUT;
+            }
+        }
+        return reported >= events;
+    }
+
+    /**
+     * Logs the throughput and latency percentiles.
+     *
+     * @param written The number of lines written.
+     * @param events  The number of events written.
+     * @param writing The time spent writing, in nanoseconds.
+     * @param elapsed The time until the last report or the timeout, in nanoseconds.
+     */
+    private synchronized void report(int written, int events, long writing, long elapsed) {
+        logger.info(String.format("Wrote %d lines holding %d events to %d sources in %d ms (%.0f lines/s).", written,
+                events, sources.size(), TimeUnit.NANOSECONDS.toMillis(writing), written / (writing / 1e9)));
+        logger.info(String.format("Reported %d of %d events (%d unexpected) in %d ms (%.0f events/s), %s mode.",
+                reported, events, unexpected.get(), TimeUnit.NANOSECONDS.toMillis(elapsed), reported / (elapsed / 1e9),
+                mode.name().toLowerCase()));
+        if (reported == 0) {
+            return;
+        }
+        long[] sorted = Arrays.copyOf(latencies, reported);
+        Arrays.sort(sorted);
+        logger.info(String.format("Log-write-to-report latency: p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, max %.2f ms.",
+                percentile(sorted, 0.5), percentile(sorted, 0.9), percentile(sorted, 0.99), percentile(sorted, 0.999),
+                sorted[sorted.length - 1] / 1e6));
+    }
+
+    /**
+     * Reads a percentile off sorted latencies.
+     *
+     * @param sorted   The latencies in nanoseconds, in ascending order. Must not be empty.
+     * @param fraction The percentile as a fraction, ex. 0.99.
+     * @return millis The percentile in milliseconds.
+     */
+    private static double percentile(long[] sorted, double fraction) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(fraction * sorted.length) - 1)] / 1e6;
+    }
+
+    /**
+     * Builds the key a written line and its report are matched by. Reports of one player on one source arrive in the
+     * order written, so matching the oldest outstanding line of the same key is exact.
+     *
+     * @param event The event.
+     * @return key The key.
+     */
+    private static String key(BanEvent event) {
+        return event.getSource().getName() + '\t' + event.getType() + '\t' + event.getSubject();
+    }
+
+    /**
+     * Writes the lines of a single source, rotating its latest.log as configured.
+     */
+    private final class Writer {
+
+        /**
+         * The source written to.
+         */
+        private final ServerSource source;
+
+        /**
+         * The lines yet to be written.
+         */
+        private final StringBuilder buffer = new StringBuilder();
+
+        /**
+         * The keys of the events within the lines yet to be written.
+         */
+        private final List<String> pending = new ArrayList<>();
+
+        /**
+         * The open latest.log.
+         */
+        private FileChannel channel;
+
+        /**
+         * The number of lines written to the open latest.log.
+         */
+        private int linesInFile;
+
+        /**
+         * The number of rotations so far.
+         */
+        private int rotations;
+
+        /**
+         * Main constructor for Writer.
+         *
+         * @param source The source to write to.
+         * @throws IOException If the log cannot be opened.
+         */
+        private Writer(ServerSource source) throws IOException {
+            this.source = source;
+            open();
+        }
+
+        /**
+         * Opens latest.log for appending.
+         *
+         * @throws IOException If the log cannot be opened.
+         */
+        private void open() throws IOException {
+            channel = FileChannel.open(source.getLogDirectory().resolve(LogTail.LATEST_LOG), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            linesInFile = 0;
+        }
+
+        /**
+         * Writes the pending lines, recording their write time first so that no report can precede it, and rotates
+         * the log if it is due.
+         *
+         * @throws IOException If the log cannot be written or rotated.
+         */
+        private void flush() throws IOException {
+            if (buffer.length() == 0) {
+                return;
+            }
+            Long now = System.nanoTime();
+            synchronized (outstanding) {
+                for (String key : pending) {
+                    outstanding.computeIfAbsent(key, k -> new ArrayDeque<>()).add(now);
+                }
+            }
+            ByteBuffer bytes = ByteBuffer.wrap(buffer.toString().getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            for (int i = 0; i < buffer.length(); i++) {
+                if (buffer.charAt(i) == '\n') {
+                    linesInFile++;
+                }
+            }
+            buffer.setLength(0);
+            pending.clear();
+            if (rotateEvery > 0 && linesInFile >= rotateEvery) {
+                channel.close();
+                Path latest = source.getLogDirectory().resolve(LogTail.LATEST_LOG);
+                Files.move(latest, source.getLogDirectory().resolve(String.format("rotated-%d.log", ++rotations)));
+                open();
+            }
+        }
+
+        /**
+         * Closes the open latest.log.
+         */
+        private void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warn(String.format("Failed to close the log of %s.", source.getName()), e);
+            }
+        }
+    }
+}
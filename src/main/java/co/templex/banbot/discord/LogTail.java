@@ -0,0 +1,389 @@
+/*
+ * BanBot: A Discord bot and an HTTP server that manages the Templex banlist.
+ * Copyright (C) 2018  vtcakavsmoace
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.templex.banbot.discord;
+
+import co.templex.banbot.ServerSource;
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Tails the latest.log of a single server source. A tail holds nothing but an open channel, a read position and any
+ * incomplete trailing line; read buffers are shared per thread, so the cost of an idle source is a few hundred bytes.
+ * <p>
+ * Tails are drained on a shared executor. {@link #signal(Executor)} may be called from any thread at any rate; at most
+ * one drain of a tail runs at a time, and a signal arriving mid-drain causes exactly one further pass, so lines of one
+ * source are always delivered in order while different sources are drained in parallel.
+ */
+final class LogTail {
+
+    /**
+     * The logger instance for all instances of LogTail. This serves solely for debug purposes.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(LogTail.class);
+
+    /**
+     * The name of the log file tailed within each log directory.
+     */
+    static final String LATEST_LOG = "latest.log";
+
+    /**
+     * The read buffer of each draining thread.
+     */
+    private static final ThreadLocal<ByteBuffer> BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocate(16384));
+
+    /**
+     * Drain state: no drain is scheduled.
+     */
+    private static final int IDLE = 0;
+
+    /**
+     * Drain state: a drain is running and no signal has arrived since it started.
+     */
+    private static final int RUNNING = 1;
+
+    /**
+     * Drain state: a drain is scheduled, or a signal arrived while one was running.
+     */
+    private static final int PENDING = 2;
+
+    /**
+     * The source tailed.
+     */
+    private final ServerSource source;
+
+    /**
+     * The tailed file.
+     */
+    private final Path file;
+
+    /**
+     * The consumer of each complete line.
+     */
+    private final Consumer<String> lines;
+
+    /**
+     * The drain state of this tail.
+     */
+    private final AtomicInteger state = new AtomicInteger(IDLE);
+
+    /**
+     * The open channel of the tailed file, or null if the file is not open. Guarded by this tail.
+     */
+    private FileChannel channel;
+
+    /**
+     * The file key of the open file, used to detect rotation. Kept while the file is closed after a read failure, so
+     * that the same file is resumed rather than read again. May be null on file systems without file keys.
+     */
+    private Object fileKey;
+
+    /**
+     * The position up to which the file has been read. Kept while the file is closed after a read failure.
+     */
+    private long position;
+
+    /**
+     * Whether the next opening of the file skips everything already written to it, as the tail has yet to attach.
+     */
+    private boolean skipping;
+
+    /**
+     * The bytes of an incomplete trailing line.
+     */
+    private byte[] partial = new byte[0];
+
+    /**
+     * The number of bytes within the incomplete trailing line.
+     */
+    private int partialLength;
+
+    /**
+     * Main constructor for LogTail.
+     *
+     * @param source The source to tail.
+     * @param lines  The consumer of each complete line. Called from the draining thread.
+     */
+    LogTail(@NonNull ServerSource source, @NonNull Consumer<String> lines) {
+        this.source = source;
+        this.file = source.getLogDirectory().resolve(LATEST_LOG);
+        this.lines = lines;
+    }
+
+    /**
+     * Returns the source tailed.
+     *
+     * @return source The source.
+     */
+    ServerSource getSource() {
+        return source;
+    }
+
+    /**
+     * Returns the tailed file.
+     *
+     * @return file The latest.log of the source.
+     */
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * Opens the tailed file, if it exists, and skips everything already written to it (the server is mid-execution,
+     * the bot is just starting execution). Must be called before the first signal. Should the file exist but fail to
+     * open, it is still skipped to its end once it opens.
+     *
+     * @throws IOException If the file exists but cannot be opened.
+     */
+    synchronized void skipToEnd() throws IOException {
+        skipping = true;
+        open();
+    }
+
+    /**
+     * Schedules a drain of this tail on the passed executor, unless one is already scheduled.
+     *
+     * @param executor The executor to drain on.
+     */
+    void signal(Executor executor) {
+        if (state.getAndSet(PENDING) == IDLE) {
+            executor.execute(this::drain);
+        }
+    }
+
+    /**
+     * Drains the tail until no further signal has arrived.
+     */
+    private void drain() {
+        do {
+            state.set(RUNNING);
+            pollQuietly();
+        } while (!state.compareAndSet(RUNNING, IDLE));
+    }
+
+    /**
+     * Reads all lines written since the last poll, logging rather than throwing any failure. A file that cannot be
+     * read is closed and reopened on the next poll, resuming where it was left off.
+     *
+     * @return read Whether any bytes were read.
+     */
+    boolean pollQuietly() {
+        try {
+            return poll();
+        } catch (IOException e) {
+            logger.warn(String.format("Unable to read %s, reopening on the next change.", file), e);
+            release();
+        } catch (RuntimeException e) {
+            logger.error(String.format("Unable to process a line of %s.", file), e);
+        }
+        return false;
+    }
+
+    /**
+     * Reads all lines written since the last poll. A rotated or deleted file is read to its end before it is let go
+     * of, and a truncated file is read again from its start. Polls only contend with {@link #close()}, as drains of a
+     * tail never overlap.
+     *
+     * @return read Whether any bytes were read.
+     * @throws IOException If the file cannot be read.
+     */
+    synchronized boolean poll() throws IOException {
+        Object currentKey;
+        try {
+            currentKey = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+        } catch (NoSuchFileException e) {
+            boolean read = channel != null && read();
+            close();
+            return read;
+        }
+        boolean read = false;
+        if (channel != null && currentKey != null && !currentKey.equals(fileKey)) {
+            read = read();
+            close();
+        }
+        if (channel == null) {
+            if (!open()) {
+                return read;
+            }
+        } else if (channel.size() < position) {
+            position = 0;
+            partialLength = 0;
+        }
+        return read() | read;
+    }
+
+    /**
+     * Releases the open file, if any, and forgets it, so that the next file opened is read from its start.
+     */
+    synchronized void close() {
+        release();
+        fileKey = null;
+        position = 0;
+        partialLength = 0;
+    }
+
+    /**
+     * Releases the open file, if any, remembering its file key and the position read up to, as after a read failure.
+     */
+    synchronized void release() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warn(String.format("Failed to close %s.", file), e);
+            }
+            channel = null;
+        }
+    }
+
+    /**
+     * Opens the tailed file. The file is read from where it was left off if it is the file last released and has not
+     * been truncated since, from its end if the tail has yet to attach, and from its start otherwise.
+     *
+     * @return opened Whether the file exists and was opened.
+     * @throws IOException If the file exists but cannot be opened.
+     */
+    private boolean open() throws IOException {
+        Object key;
+        long size;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            key = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+            size = channel.size();
+        } catch (NoSuchFileException e) {
+            close();
+            skipping = false;
+            return false;
+        } catch (IOException e) {
+            release();
+            throw e;
+        }
+        if (skipping) {
+            position = size;
+            partialLength = 0;
+            skipping = false;
+        } else if (!Objects.equals(key, fileKey) || size < position) {
+            position = 0;
+            partialLength = 0;
+        }
+        fileKey = key;
+        return true;
+    }
+
+    /**
+     * Reads the open file to its current end, passing every complete line on.
+     *
+     * @return read Whether any bytes were read.
+     * @throws IOException If the file cannot be read.
+     */
+    private boolean read() throws IOException {
+        ByteBuffer buffer = BUFFER.get();
+        boolean read = false;
+        for (int n; (n = channel.read((ByteBuffer) buffer.clear(), position)) > 0; ) {
+            position += n;
+            read = true;
+            split(buffer.array(), n);
+        }
+        return read;
+    }
+
+    /**
+     * Splits the passed bytes into lines, joining them with the incomplete trailing line of the previous read.
+     *
+     * @param bytes  The bytes read.
+     * @param length The number of bytes read.
+     */
+    private void split(byte[] bytes, int length) {
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] != '\n') {
+                continue;
+            }
+            if (partialLength > 0) {
+                append(bytes, start, i - start);
+                int lineLength = partialLength;
+                partialLength = 0; // reset first, so that the line is never joined with the next one
+                emit(partial, 0, lineLength);
+            } else {
+                emit(bytes, start, i - start);
+            }
+            start = i + 1;
+        }
+        append(bytes, start, length - start);
+    }
+
+    /**
+     * Appends bytes to the incomplete trailing line.
+     *
+     * @param bytes  The bytes to append.
+     * @param offset The offset of the first byte.
+     * @param length The number of bytes.
+     */
+    private void append(byte[] bytes, int offset, int length) {
+        if (length == 0) {
+            return;
+        }
+        if (partialLength + length > partial.length) {
+            byte[] grown = new byte[Math.max(partialLength + length, partial.length * 2)];
+            System.arraycopy(partial, 0, grown, 0, partialLength);
+            partial = grown;
+        }
+        System.arraycopy(bytes, offset, partial, partialLength, length);
+        partialLength += length;
+    }
+
+    /**
+     * Decodes and passes on a single line, dropping a trailing carriage return. A line the consumer fails on is logged
+     * and skipped, as the read position has already moved past it and the rest of the read must still be passed on.
+     *
+     * @param bytes  The bytes of the line.
+     * @param offset The offset of the first byte.
+     * @param length The number of bytes.
+     */
+    private void emit(byte[] bytes, int offset, int length) {
+        if (length > 0 && bytes[offset + length - 1] == '\r') {
+            length--;
+        }
+        String line = new String(bytes, offset, length, StandardCharsets.UTF_8);
+        try {
+            lines.accept(line);
+        } catch (RuntimeException e) {
+            logger.error(String.format("Skipping line \"%s\" of %s, which could not be handled.", line, source.getName()), e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LogTail{source=%s, position=%d}", source.getName(), position);
+    }
+}
@@ -18,20 +18,34 @@
 
 package co.templex.banbot.discord;
 
+import co.templex.banbot.ServerSource;
 import lombok.NonNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.nio.file.*;
+import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
- * LogWatcher class. Instances of this class will watch minecraft log files continuously until shutdown.
+ * LogWatcher class. Instances of this class will watch the minecraft log files of any number of server sources
+ * continuously until shutdown.
+ * <p>
+ * All log directories are registered with a single watch service, whose thread does nothing but signal the tail of
+ * the changed file. Tails are drained on a small parser pool shared by all sources, so the thread count stays fixed
+ * and an idle source costs only its tail, no matter how many servers are watched.
+ * <p>
+ * Where watch services are slow or unreliable, such as on overlay or network file systems, or on JDKs whose watch
+ * service itself polls every few seconds, logs are polled instead (see {@link Mode}). Each polled tail is read on the
+ * parser pool at an interval that is kept short while lines are arriving and doubles while its log is idle.
  */
 public class LogWatcher implements Runnable {
 
@@ -41,9 +55,82 @@ public class LogWatcher implements Runnable {
     private static final Logger logger = LoggerFactory.getLogger(LogWatcher.class);
 
     /**
-     * The bot instance to which this log reports.
+     * Pattern for command feedback broadcast to operators, ex. "[Notch: Banned IP address 127.0.0.1]".
      */
-    private final Bot bot;
+    private static final Pattern OPERATOR_FEEDBACK = Pattern.compile("\\[([^:\\]]+): (.*)]");
+
+    /**
+     * Pattern for IP bans, ex. "Banned IP address 127.0.0.1" or "Banned IP 127.0.0.1: Griefing".
+     */
+    private static final Pattern IP_BAN = Pattern.compile("Banned IP(?: address)? ([0-9A-Fa-f.:]+)(?: belonging to [^:]*)?(?:: (.*))?");
+
+    /**
+     * Pattern for IP pardons, ex. "Unbanned IP address 127.0.0.1".
+     */
+    private static final Pattern IP_PARDON = Pattern.compile("Unbanned IP(?: address)? ([0-9A-Fa-f.:]+)");
+
+    /**
+     * The types of file stores on which watch services deliver events late, coalesced or not at all. File stores of
+     * any FUSE type are polled as well.
+     */
+    private static final Set<String> POLLED_FILE_STORE_TYPES = new HashSet<>(Arrays.asList(
+            "overlay", "nfs", "nfs4", "cifs", "smbfs", "smb3", "9p", "vboxsf", "prl_fs"));
+
+    /**
+     * The default shortest interval between polls of a log, in milliseconds.
+     */
+    public static final long DEFAULT_MIN_POLL_INTERVAL = 10;
+
+    /**
+     * The default longest interval between polls of a log, in milliseconds. The first line after a quiet spell waits
+     * up to this long, so it is kept below the tens of milliseconds a report should take.
+     */
+    public static final long DEFAULT_MAX_POLL_INTERVAL = 50;
+
+    /**
+     * Ways of noticing that a log has changed.
+     */
+    public enum Mode {
+        /**
+         * Polls the logs on file stores known to be unreliable with watch services, or all logs if the watch service
+         * polls by itself, and watches the rest.
+         */
+        AUTO,
+        /**
+         * Watches every log with the watch service.
+         */
+        WATCH,
+        /**
+         * Polls every log.
+         */
+        POLL;
+
+        /**
+         * Parses a mode from its configuration name, ex. "auto" or "poll".
+         *
+         * @param name The configuration name.
+         * @return mode The mode.
+         * @throws IllegalArgumentException If no mode has the passed name.
+         */
+        public static Mode fromName(@NonNull String name) {
+            return valueOf(name.trim().toUpperCase());
+        }
+    }
+
+    /**
+     * The consumer to which every banlist modification is reported.
+     */
+    private final Consumer<BanEvent> reporter;
+
+    /**
+     * The tails of all watched sources.
+     */
+    private final List<LogTail> tails = new ArrayList<>();
+
+    /**
+     * The tails within each watched log directory.
+     */
+    private final Map<Path, List<LogTail>> directories = new HashMap<>();
 
     /**
      * The single-threaded executor on which this watcher watches.
@@ -51,13 +138,74 @@ public class LogWatcher implements Runnable {
     private final ExecutorService watchServiceExecutor;
 
     /**
-     * Main constructor. A bot instance must be passed in order for reporting to be valid.
+     * The pool on which changed logs are read and parsed. This is shared by all sources.
+     */
+    private final ScheduledExecutorService parserPool;
+
+    /**
+     * The number of threads within the parser pool.
+     */
+    private final int parserThreads;
+
+    /**
+     * The way of noticing that a log has changed.
+     */
+    private final Mode mode;
+
+    /**
+     * The shortest interval between polls of a log, used while lines are arriving, in milliseconds.
+     */
+    private final long minPollInterval;
+
+    /**
+     * The longest interval between polls of a log, reached while it is idle, in milliseconds.
+     */
+    private final long maxPollInterval;
+
+    /**
+     * Main constructor. Every banlist modification found within the logs of the passed sources is passed to the
+     * reporter, tagged with its source. The way of noticing changes is chosen per log directory.
+     *
+     * @param sources  The sources whose logs are to be watched.
+     * @param reporter The consumer to which banlist modifications are reported. Called from the parser pool, but never
+     *                 concurrently for the same source.
+     */
+    public LogWatcher(@NonNull List<ServerSource> sources, @NonNull Consumer<BanEvent> reporter) {
+        this(sources, reporter, Mode.AUTO, DEFAULT_MIN_POLL_INTERVAL, DEFAULT_MAX_POLL_INTERVAL);
+    }
+
+    /**
+     * Constructor for LogWatcher noticing changes in the passed mode.
      *
-     * @param bot The bot instance which this log watcher refers to.
+     * @param sources         The sources whose logs are to be watched.
+     * @param reporter        The consumer to which banlist modifications are reported. Called from the parser pool,
+     *                        but never concurrently for the same source.
+     * @param mode            The way of noticing that a log has changed.
+     * @param minPollInterval The shortest interval between polls of a log, in milliseconds.
+     * @param maxPollInterval The longest interval between polls of a log, in milliseconds.
      */
-    LogWatcher(@NonNull Bot bot) {
-        this.bot = bot;
+    public LogWatcher(@NonNull List<ServerSource> sources, @NonNull Consumer<BanEvent> reporter, @NonNull Mode mode,
+                      long minPollInterval, long maxPollInterval) {
+        if (minPollInterval <= 0 || maxPollInterval < minPollInterval) {
+            throw new IllegalArgumentException("Poll intervals must be positive, the longest no shorter than the shortest.");
+        }
+        this.reporter = reporter;
+        this.mode = mode;
+        this.minPollInterval = minPollInterval;
+        this.maxPollInterval = maxPollInterval;
+        for (ServerSource source : sources) {
+            LogTail tail = new LogTail(source, line -> {
+                BanEvent event = parseLine(source, line);
+                if (event != null) {
+                    reporter.accept(event);
+                }
+            });
+            tails.add(tail);
+            directories.computeIfAbsent(source.getLogDirectory().toAbsolutePath().normalize(), k -> new ArrayList<>()).add(tail);
+        }
         this.watchServiceExecutor = Executors.newSingleThreadExecutor();
+        this.parserThreads = Math.max(1, Math.min(sources.size(), Runtime.getRuntime().availableProcessors() / 2));
+        this.parserPool = Executors.newScheduledThreadPool(parserThreads);
     }
 
     /**
@@ -65,6 +213,8 @@ public class LogWatcher implements Runnable {
      */
     public void shutdown() {
         watchServiceExecutor.shutdownNow();
+        parserPool.shutdownNow();
+        tails.forEach(LogTail::close);
     }
 
     /**
@@ -75,84 +225,105 @@ public class LogWatcher implements Runnable {
     }
 
     /**
-     * Main watcher instructions. A buffered reader updates to ensure that the bottom of the log is always watched.
+     * Main watcher instructions. Each event only signals the tail of the changed file; the tails themselves read
+     * everything written since their last read, so coalesced or overflowing events lose no lines. Polled logs are
+     * handed to the parser pool and not watched at all.
      */
     @Override
     public void run() {
-        Path path = Paths.get(System.getProperty("user.dir"), "logs");
-        File latestLog = new File(path.toFile(), "latest.log");
-        BufferedReader reader = null;
         try (final WatchService watchService = FileSystems.getDefault().newWatchService()) {
-            if (latestLog.exists()) {
-                reader = new BufferedReader(new FileReader(latestLog));
-                discardUntilEnd(reader);
+            // JDKs without native file events fall back to a watch service that polls every few seconds
+            boolean nativeEvents = !watchService.getClass().getSimpleName().equals("PollingWatchService");
+            int watchedLogs = 0, polledLogs = 0;
+            for (Map.Entry<Path, List<LogTail>> directory : directories.entrySet()) {
+                for (LogTail tail : directory.getValue()) {
+                    try {
+                        tail.skipToEnd();
+                    } catch (IOException e) {
+                        logger.warn(String.format("Unable to open %s.", tail.getFile()), e);
+                    }
+                }
+                if (isPolled(directory.getKey(), nativeEvents)) {
+                    for (LogTail tail : directory.getValue()) {
+                        parserPool.execute(new Poller(tail));
+                        polledLogs++;
+                    }
+                    continue;
+                }
+                try {
+                    directory.getKey().register(watchService, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE);
+                    watchedLogs += directory.getValue().size();
+                } catch (IOException e) {
+                    logger.error(String.format("Unable to watch %s, ignoring it.", directory.getKey()), e);
+                }
+            }
+            logger.info(String.format("Watching %d and polling %d server logs on %d parser threads.", watchedLogs, polledLogs, parserThreads));
+            if (watchedLogs == 0) {
+                return;
             }
-            path.register(watchService, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE);
             WatchKey wk;
             do {
                 wk = watchService.take();
+                List<LogTail> watched = directories.getOrDefault((Path) wk.watchable(), Collections.emptyList());
                 for (WatchEvent<?> event : wk.pollEvents()) {
-                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
-                        continue;
-                    }
-                    if (((Path) event.context()).endsWith("latest.log")) {
-                        if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
-                            if (reader != null) {
-                                reader.close();
-                                reader = null;
-                            }
-                            continue;
-                        }
-                        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
-                            reader = new BufferedReader(new FileReader(latestLog));
-                        }
-                        if (reader != null) {
-                            for (String line; (line = reader.readLine()) != null; ) {
-                                checkLineForBanlistModification(line);
-                            }
+                    for (LogTail tail : watched) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW || tail.getFile().endsWith((Path) event.context())) {
+                            tail.signal(parserPool);
                         }
                     }
                 }
 
                 if (!wk.reset()) {
-                    logger.warn("Watch key was unregistered.");
+                    logger.warn(String.format("Watch key for %s was unregistered.", wk.watchable()));
                 }
             } while (!watchServiceExecutor.isShutdown());
-            if (reader != null) {
-                reader.close();
-            }
-        } catch (IOException | InterruptedException e) {
+        } catch (IOException | InterruptedException | ClosedWatchServiceException e) {
             logger.error("Broke out of file update loop.", e);
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException e1) {
-                    logger.error("Failed to close buffered file reader.", e);
-                }
-            }
         }
     }
 
     /**
-     * Helper method to discard all previous entries (server is mid-execution, bot is just starting execution).
+     * Decides whether the logs within a directory are polled rather than watched.
      *
-     * @param reader Reader to discard all previous entries from.
-     * @throws IOException If there is an error in the reader.
+     * @param directory    The log directory.
+     * @param nativeEvents Whether the watch service receives events from the operating system.
+     * @return polled Whether the logs within the directory are polled.
      */
-    private void discardUntilEnd(BufferedReader reader) throws IOException {
-        //noinspection StatementWithEmptyBody
-        while (reader.readLine() != null) ;
+    private boolean isPolled(Path directory, boolean nativeEvents) {
+        if (mode != Mode.AUTO) {
+            return mode == Mode.POLL;
+        }
+        if (!nativeEvents) {
+            return true;
+        }
+        try {
+            String type = Files.getFileStore(directory).type();
+            if (POLLED_FILE_STORE_TYPES.contains(type) || type.startsWith("fuse")) {
+                logger.info(String.format("Polling the logs within %s, as it is on a file store of type %s.", directory, type));
+                return true;
+            }
+        } catch (IOException e) {
+            logger.warn(String.format("Unable to determine the file store of %s, watching it.", directory), e);
+        }
+        return false;
     }
 
     /**
-     * Checks the line passed for a banlist modification. If the line matches the result of a /ban or /pardon
-     * execution, it will report so to the appropriate location.
+     * Checks the line passed for a banlist modification, that is the result of a /ban, /pardon, /ban-ip or /pardon-ip
+     * execution. This is shared with {@link LoadHarness}, which uses it to tell which of the lines it writes should be
+     * reported.
      *
-     * @param line The line to check against.
+     * @param source The source whose log the line was read from.
+     * @param line   The line to check against.
+     * @return event The modification, or null if the line is not one.
      */
-    private void checkLineForBanlistModification(String line) {
+    static BanEvent parseLine(@NonNull ServerSource source, @NonNull String line) {
         if (line.length() > 33) { // ex. "[03:05:13] [Server thread/INFO]: "
             line = line.substring(33);
+            BanEvent event = parseIpBanlistModification(source, line);
+            if (event != null) {
+                return event;
+            }
             String[] splitLine = line.split(": ");
             if (line.startsWith("Banned")) {
                 StringBuilder reason = new StringBuilder(splitLine[1]);
@@ -160,18 +331,95 @@ public class LogWatcher implements Runnable {
                     reason.append(": ");
                     reason.append(splitLine[i]);
                 }
-                bot.reportBan(splitLine[0].substring(7), "Server", reason.toString());
+                return event(source, BanEvent.Type.BAN, splitLine[0].substring(7), "Server", reason.toString());
             } else if (line.startsWith("Unbanned")) {
-                bot.reportPardon(splitLine[0].substring(9), "Server");
+                return event(source, BanEvent.Type.PARDON, splitLine[0].substring(9), "Server", null);
             } else if (line.matches("\\[.*: Banned .*:.*]")) {
                 StringBuilder reason = new StringBuilder(splitLine[1]);
                 for (int i = 2; i < splitLine.length; i++) {
                     reason.append(": ");
                     reason.append(splitLine[i]);
                 }
-                bot.reportBan(splitLine[1].substring(7), splitLine[0].substring(1), reason.substring(0, reason.length() - 1));
+                return event(source, BanEvent.Type.BAN, splitLine[1].substring(7), splitLine[0].substring(1), reason.substring(0, reason.length() - 1));
             } else if (line.matches("\\[.*: Unbanned .*]")) {
-                bot.reportPardon(splitLine[1].substring(9, splitLine[1].length() - 1), splitLine[0].substring(1));
+                return event(source, BanEvent.Type.PARDON, splitLine[1].substring(9, splitLine[1].length() - 1), splitLine[0].substring(1), null);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks the passed line (without its timestamp prefix) for the result of a /ban-ip or /pardon-ip execution. This
+     * must run before player ban checks, as IP ban lines also start with "Banned" and IPv6 addresses contain colons.
+     *
+     * @param source The source whose log the line was read from.
+     * @param line   The line to check against.
+     * @return event The IP ban or pardon, or null if the line is neither.
+     */
+    private static BanEvent parseIpBanlistModification(ServerSource source, String line) {
+        String issuer = "Server";
+        Matcher operator = OPERATOR_FEEDBACK.matcher(line);
+        if (operator.matches()) {
+            issuer = operator.group(1);
+            line = operator.group(2);
+        }
+        Matcher matcher = IP_BAN.matcher(line);
+        if (matcher.matches()) {
+            return event(source, BanEvent.Type.IP_BAN, matcher.group(1), issuer, matcher.group(2));
+        }
+        matcher = IP_PARDON.matcher(line);
+        if (matcher.matches()) {
+            return event(source, BanEvent.Type.IP_PARDON, matcher.group(1), issuer, null);
+        }
+        return null;
+    }
+
+    /**
+     * Creates a banlist modification read just now.
+     *
+     * @param source  The source whose log the modification was read from.
+     * @param type    The kind of modification.
+     * @param subject The banned or pardoned player or address.
+     * @param issuer  The issuer of the modification.
+     * @param reason  The reason given for a ban. May be null.
+     * @return event The modification.
+     */
+    private static BanEvent event(ServerSource source, BanEvent.Type type, String subject, String issuer, String reason) {
+        return new BanEvent(source, type, subject, issuer, reason, System.currentTimeMillis());
+    }
+
+    /**
+     * Polls a single tail on the parser pool, rescheduling itself with adaptive backoff: the shortest interval right
+     * after lines were read, doubling with every idle poll up to the longest.
+     */
+    private final class Poller implements Runnable {
+
+        /**
+         * The tail polled.
+         */
+        private final LogTail tail;
+
+        /**
+         * The interval until the next poll, in milliseconds.
+         */
+        private long interval = minPollInterval;
+
+        /**
+         * Main constructor for Poller.
+         *
+         * @param tail The tail to poll.
+         */
+        private Poller(LogTail tail) {
+            this.tail = tail;
+        }
+
+        @Override
+        public void run() {
+            interval = tail.pollQuietly() ? minPollInterval : Math.min(maxPollInterval, interval * 2);
+            try {
+                parserPool.schedule(this, interval, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                logger.debug(String.format("Stopped polling %s.", tail.getFile()));
             }
         }
     }
@@ -0,0 +1,145 @@
+/*
+ * BanBot: A Discord bot and an HTTP server that manages the Templex banlist.
+ * Copyright (C) 2018  vtcakavsmoace
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.templex.banbot.discord;
+
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs tasks on a shared executor while keeping the tasks of each key in submission order. Keys are hashed onto a
+ * fixed number of stripes; the tasks of a stripe run one at a time, and different stripes run in parallel.
+ * <p>
+ * A stripe holds no thread of its own, only a queue, so there are several stripes per thread to keep unrelated keys
+ * from queueing behind one another.
+ */
+final class StripedExecutor {
+
+    /**
+     * The logger instance for all instances of StripedExecutor. This serves solely for debug purposes.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(StripedExecutor.class);
+
+    /**
+     * The number of stripes per thread of the backing executor.
+     */
+    private static final int STRIPES_PER_THREAD = 4;
+
+    /**
+     * The executor the stripes are drained on.
+     */
+    private final Executor executor;
+
+    /**
+     * The stripes. The length is a power of two.
+     */
+    private final Stripe[] stripes;
+
+    /**
+     * Main constructor for StripedExecutor.
+     *
+     * @param executor The executor to run tasks on.
+     * @param threads  The number of threads of the executor.
+     */
+    StripedExecutor(@NonNull Executor executor, int threads) {
+        this.executor = executor;
+        int count = Integer.highestOneBit(Math.max(1, threads * STRIPES_PER_THREAD - 1)) << 1;
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Runs the passed task after every task previously submitted with an equal key. Keys are compared ignoring case,
+     * as player names are.
+     *
+     * @param key  The key to order by.
+     * @param task The task to run.
+     * @throws java.util.concurrent.RejectedExecutionException If the backing executor has been shut down.
+     */
+    void execute(@NonNull String key, @NonNull Runnable task) {
+        int hash = key.toLowerCase(Locale.ROOT).hashCode();
+        stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)].submit(task);
+    }
+
+    /**
+     * A queue of tasks run one at a time.
+     */
+    private final class Stripe {
+
+        /**
+         * The tasks yet to run.
+         */
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        /**
+         * Whether a drain of this stripe is scheduled or running.
+         */
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        /**
+         * Queues a task, scheduling a drain unless one is already scheduled.
+         *
+         * @param task The task to queue.
+         */
+        private void submit(Runnable task) {
+            tasks.add(task);
+            schedule();
+        }
+
+        /**
+         * Schedules a drain if tasks are queued and no drain is scheduled.
+         */
+        private void schedule() {
+            if (!tasks.isEmpty() && scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RuntimeException e) {
+                    scheduled.set(false);
+                    throw e;
+                }
+            }
+        }
+
+        /**
+         * Runs queued tasks until the queue is empty. A task queued just as the drain finishes schedules a new one.
+         */
+        private void drain() {
+            try {
+                for (Runnable task; (task = tasks.poll()) != null; ) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        logger.error("Unable to run a striped task.", e);
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+            }
+            schedule();
+        }
+    }
+}
@@ -0,0 +1,559 @@
+/*
+ * BanBot: A Discord bot and an HTTP server that manages the Templex banlist.
+ * Copyright (C) 2018  vtcakavsmoace
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.templex.banbot.discord;
+
+import co.templex.banbot.ServerSource;
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Pardons temporarily banned players once their bans expire, across restarts.
+ * <p>
+ * Pending expirations are held in a priority queue ordered by expiry, and a single timer is armed for the earliest, so
+ * neither threads nor timers grow with the number of bans. Replaced and cancelled expirations are left in the queue
+ * and skipped when they surface, until they outnumber the pending ones and the queue is rebuilt.
+ * <p>
+ * Every change is appended to a journal and forced to disk before it takes effect, so a crash loses nothing. The
+ * journal is replayed on start, and rewritten with only the pending expirations once it has grown to several times
+ * their number. Expirations that passed while the bot was down are carried out right after the replay.
+ */
+final class TempBanScheduler {
+
+    /**
+     * The logger instance for all instances of TempBanScheduler. This serves solely for debug purposes.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(TempBanScheduler.class);
+
+    /**
+     * Pattern for durations, ex. "30m", "12h" or "1w2d".
+     */
+    private static final Pattern DURATION = Pattern.compile("(\\d+)([smhdw])");
+
+    /**
+     * Pattern for the suffix marking the reason of a temporary ban, ex. "(temporary, until 2018-06-01T12:00:00Z)".
+     */
+    private static final Pattern TEMPORARY = Pattern.compile("\\(temporary, until [^)]*\\)$");
+
+    /**
+     * Pattern for Minecraft player names. Names are written into tab and newline delimited journal records and onto
+     * the server console, so nothing else may be let through.
+     */
+    private static final Pattern PLAYER_NAME = Pattern.compile("[A-Za-z0-9_]{1,16}");
+
+    /**
+     * The delay before retrying a pardon that could not be written to the console, in milliseconds.
+     */
+    private static final long RETRY_DELAY = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * The number of obsolete records tolerated within the journal or the queue, on top of one per pending expiration.
+     */
+    private static final int SLACK = 1024;
+
+    /**
+     * Journal record prefix of a scheduled expiration.
+     */
+    private static final String SCHEDULED = "+";
+
+    /**
+     * Journal record prefix of a completed or cancelled expiration.
+     */
+    private static final String REMOVED = "-";
+
+    /**
+     * The journal file.
+     */
+    private final Path store;
+
+    /**
+     * The sources pardons may be written to, keyed by name.
+     */
+    private final Map<String, ServerSource> sources = new HashMap<>();
+
+    /**
+     * The pending expirations, keyed by {@link #key(String, String)}. Guarded by this scheduler.
+     */
+    private final Map<String, Expiration> pending = new HashMap<>();
+
+    /**
+     * The pending expirations ordered by expiry, possibly along with obsolete ones. Guarded by this scheduler.
+     */
+    private final PriorityQueue<Expiration> queue = new PriorityQueue<>();
+
+    /**
+     * The single-threaded executor on which expirations are carried out.
+     */
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+
+    /**
+     * The open journal, or null before start. Guarded by this scheduler.
+     */
+    private FileChannel journal;
+
+    /**
+     * The number of records within the journal. Guarded by this scheduler.
+     */
+    private int records;
+
+    /**
+     * The armed timer, or null if none is armed. Guarded by this scheduler.
+     */
+    private ScheduledFuture<?> wakeup;
+
+    /**
+     * The time the armed timer fires at, in milliseconds since the epoch. Guarded by this scheduler.
+     */
+    private long wakeupAt;
+
+    /**
+     * Main constructor for TempBanScheduler.
+     *
+     * @param store   The journal file. Created on start if absent.
+     * @param sources The sources pardons may be written to.
+     */
+    TempBanScheduler(@NonNull Path store, @NonNull Collection<ServerSource> sources) {
+        this.store = store;
+        for (ServerSource source : sources) {
+            this.sources.put(source.getName(), source);
+        }
+    }
+
+    /**
+     * Parses a duration, ex. "45s", "30m", "12h", "7d", "2w" or combinations such as "1d12h".
+     *
+     * @param duration The duration to parse.
+     * @return millis The duration in milliseconds.
+     * @throws IllegalArgumentException If the duration is malformed, zero or absurdly long.
+     */
+    static long parseDuration(@NonNull String duration) {
+        Matcher matcher = DURATION.matcher(duration.toLowerCase(Locale.ROOT));
+        long millis = 0;
+        int end = 0;
+        while (matcher.find() && matcher.start() == end) {
+            long amount = Long.parseLong(matcher.group(1));
+            TimeUnit unit;
+            switch (matcher.group(2).charAt(0)) {
+                case 's':
+                    unit = TimeUnit.SECONDS;
+                    break;
+                case 'm':
+                    unit = TimeUnit.MINUTES;
+                    break;
+                case 'h':
+                    unit = TimeUnit.HOURS;
+                    break;
+                case 'd':
+                    unit = TimeUnit.DAYS;
+                    break;
+                default:
+                    unit = TimeUnit.DAYS;
+                    amount *= 7;
+            }
+            millis += unit.toMillis(amount);
+            end = matcher.end();
+        }
+        if (end == 0 || end != duration.length() || millis <= 0 || millis > TimeUnit.DAYS.toMillis(3650)) {
+            throw new IllegalArgumentException(String.format("Invalid duration \"%s\".", duration));
+        }
+        return millis;
+    }
+
+    /**
+     * Builds the reason of a temporary ban, marking it as temporary so that its ban is told apart from permanent ones
+     * when read back from the log (see {@link #isTemporary(String)}).
+     *
+     * @param reason    The reason given, possibly empty.
+     * @param expiresAt The time the ban expires, in milliseconds since the epoch.
+     * @return reason The marked reason.
+     */
+    static String reason(@NonNull String reason, long expiresAt) {
+        String marker = String.format("(temporary, until %s)", Instant.ofEpochMilli(expiresAt));
+        return reason.isEmpty() ? marker : reason + " " + marker;
+    }
+
+    /**
+     * Checks whether a ban reason read from the log marks a temporary ban.
+     *
+     * @param reason The reason. May be null.
+     * @return temporary Whether the reason was built by {@link #reason(String, long)}.
+     */
+    static boolean isTemporary(String reason) {
+        return reason != null && TEMPORARY.matcher(reason.trim()).find();
+    }
+
+    /**
+     * Checks whether a string is a valid Minecraft player name.
+     *
+     * @param player The string to check.
+     * @return valid Whether the string is one to sixteen letters, digits or underscores.
+     */
+    static boolean isPlayerName(@NonNull String player) {
+        return PLAYER_NAME.matcher(player).matches();
+    }
+
+    /**
+     * Replays the journal and starts carrying out expirations, beginning with any that passed while the bot was down.
+     *
+     * @throws IOException If the journal cannot be read or opened.
+     */
+    synchronized void start() throws IOException {
+        long started = System.nanoTime();
+        try (BufferedReader reader = Files.newBufferedReader(store, StandardCharsets.UTF_8)) {
+            for (String line; (line = reader.readLine()) != null; records++) {
+                replay(line);
+            }
+        } catch (NoSuchFileException e) {
+            logger.debug(String.format("No temporary ban journal at %s yet.", store));
+        }
+        queue.addAll(pending.values());
+        if (isBloated()) {
+            compact();
+        } else {
+            journal = FileChannel.open(store, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        long now = System.currentTimeMillis(), overdue = pending.values().stream().filter(e -> e.expiresAt <= now).count();
+        logger.info(String.format("Loaded %d pending temporary bans (%d overdue) from %s in %d ms.", pending.size(),
+                overdue, store, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started)));
+        arm();
+    }
+
+    /**
+     * Stops carrying out expirations. Pending ones stay within the journal.
+     */
+    synchronized void shutdown() {
+        timer.shutdownNow();
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                logger.warn(String.format("Failed to close %s.", store), e);
+            }
+            journal = null;
+        }
+    }
+
+    /**
+     * Returns the number of pending expirations.
+     *
+     * @return size The number of pending expirations.
+     */
+    synchronized int size() {
+        return pending.size();
+    }
+
+    /**
+     * Schedules a pardon of a player on a source, replacing any pardon already scheduled for them there.
+     *
+     * @param source    The source the player is banned on.
+     * @param player    The banned player.
+     * @param expiresAt The time of the pardon, in milliseconds since the epoch.
+     * @throws IOException              If the journal cannot be written.
+     * @throws IllegalArgumentException If the player name is not a valid Minecraft name.
+     */
+    synchronized void schedule(@NonNull ServerSource source, @NonNull String player, long expiresAt) throws IOException {
+        if (!isPlayerName(player)) {
+            throw new IllegalArgumentException(String.format("Invalid player name \"%s\".", player));
+        }
+        Expiration expiration = new Expiration(source.getName(), player, expiresAt);
+        append(String.format("%s\t%d\t%s\t%s\n", SCHEDULED, expiresAt, source.getName(), player));
+        pending.put(key(source.getName(), player), expiration);
+        queue.add(expiration);
+        compactIfBloated();
+        arm();
+    }
+
+    /**
+     * Cancels the pardon scheduled for a player on a source, if any. This is called whenever a player is banned
+     * permanently or pardoned by other means.
+     *
+     * @param source The source the player is banned on.
+     * @param player The player.
+     * @return cancelled Whether a pardon was scheduled.
+     * @throws IOException If the journal cannot be written.
+     */
+    synchronized boolean cancel(@NonNull ServerSource source, @NonNull String player) throws IOException {
+        if (!pending.containsKey(key(source.getName(), player))) {
+            return false;
+        }
+        append(String.format("%s\t%s\t%s\n", REMOVED, source.getName(), player));
+        pending.remove(key(source.getName(), player));
+        compactIfBloated();
+        return true;
+    }
+
+    /**
+     * Applies a single journal record to the pending expirations. Malformed records, such as one torn by a crash, are
+     * skipped.
+     *
+     * @param line The record.
+     */
+    private void replay(String line) {
+        String[] fields = line.split("\t");
+        try {
+            if (fields.length == 4 && fields[0].equals(SCHEDULED)) {
+                pending.put(key(fields[2], fields[3]), new Expiration(fields[2], fields[3], Long.parseLong(fields[1])));
+                return;
+            }
+            if (fields.length == 3 && fields[0].equals(REMOVED)) {
+                pending.remove(key(fields[1], fields[2]));
+                return;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        logger.warn(String.format("Skipping malformed temporary ban record \"%s\" in %s.", line, store));
+    }
+
+    /**
+     * Rewrites the journal with only the pending expirations, replacing it atomically.
+     *
+     * @throws IOException If the journal cannot be written.
+     */
+    private void compact() throws IOException {
+        Path temporary = store.resolveSibling(store.getFileName() + ".tmp");
+        StringBuilder builder = new StringBuilder();
+        for (Expiration expiration : pending.values()) {
+            builder.append(String.format("%s\t%d\t%s\t%s\n", SCHEDULED, expiration.expiresAt, expiration.source, expiration.player));
+        }
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(channel, builder.toString());
+        }
+        if (journal != null) {
+            journal.close();
+        }
+        Files.move(temporary, store, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journal = FileChannel.open(store, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        logger.info(String.format("Compacted %s from %d to %d records.", store, records, pending.size()));
+        records = pending.size();
+    }
+
+    /**
+     * Appends a record to the journal and forces it to disk.
+     *
+     * @param record The record, including its trailing newline.
+     * @throws IOException If the journal cannot be written.
+     */
+    private void append(String record) throws IOException {
+        if (journal == null) {
+            throw new IOException("Temporary bans are not loaded.");
+        }
+        write(journal, record);
+        records++;
+    }
+
+    /**
+     * Checks whether the journal holds too many obsolete records.
+     *
+     * @return bloated Whether the journal should be compacted.
+     */
+    private boolean isBloated() {
+        return records > pending.size() * 2 + SLACK;
+    }
+
+    /**
+     * Compacts the journal if it holds too many obsolete records. This must only be called once the pending
+     * expirations reflect every record appended.
+     *
+     * @throws IOException If the journal cannot be written.
+     */
+    private void compactIfBloated() throws IOException {
+        if (isBloated()) {
+            compact();
+        }
+    }
+
+    /**
+     * Writes a string to a channel and forces it to disk.
+     *
+     * @param channel The channel to write to.
+     * @param content The content to write.
+     * @throws IOException If the channel cannot be written.
+     */
+    private static void write(FileChannel channel, String content) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+    }
+
+    /**
+     * Arms the timer for the earliest pending expiration, unless it is armed for that time or earlier already.
+     */
+    private void arm() {
+        Expiration next = peek();
+        if (next == null || (wakeup != null && wakeupAt <= next.expiresAt)) {
+            return;
+        }
+        if (wakeup != null) {
+            wakeup.cancel(false);
+        }
+        wakeupAt = next.expiresAt;
+        try {
+            wakeup = timer.schedule(this::expire, Math.max(0, wakeupAt - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            wakeup = null;
+        }
+    }
+
+    /**
+     * Returns the earliest pending expiration, dropping obsolete ones from the head of the queue and rebuilding the
+     * queue once obsolete entries dominate it.
+     *
+     * @return next The earliest pending expiration, or null if none is pending.
+     */
+    private Expiration peek() {
+        if (queue.size() > pending.size() * 2 + SLACK) {
+            queue.clear();
+            queue.addAll(pending.values());
+        }
+        for (Expiration head; (head = queue.peek()) != null; queue.poll()) {
+            if (pending.get(key(head.source, head.player)) == head) {
+                return head;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Carries out every due expiration, then rearms the timer. A pardon that cannot be written is retried a minute
+     * later; one for a source that is no longer configured is dropped.
+     */
+    private void expire() {
+        List<Expiration> due = new ArrayList<>();
+        synchronized (this) {
+            wakeup = null;
+            long now = System.currentTimeMillis();
+            for (Expiration next; (next = peek()) != null && next.expiresAt <= now; ) {
+                due.add(queue.poll());
+            }
+        }
+        for (Expiration expiration : due) {
+            ServerSource source = sources.get(expiration.source);
+            try {
+                if (source == null) {
+                    logger.warn(String.format("Dropping the temporary ban of %s on %s, as the server is no longer configured.",
+                            expiration.player, expiration.source));
+                } else {
+                    source.writeToConsole(String.format("pardon %s", expiration.player));
+                    logger.info(String.format("Temporary ban of %s on %s expired.", expiration.player, expiration.source));
+                }
+                synchronized (this) {
+                    if (pending.get(key(expiration.source, expiration.player)) == expiration) {
+                        append(String.format("%s\t%s\t%s\n", REMOVED, expiration.source, expiration.player));
+                        pending.remove(key(expiration.source, expiration.player));
+                        compactIfBloated();
+                    }
+                }
+            } catch (IOException e) {
+                logger.error(String.format("Unable to lift the temporary ban of %s on %s, retrying in a minute.",
+                        expiration.player, expiration.source), e);
+                synchronized (this) {
+                    if (pending.get(key(expiration.source, expiration.player)) == expiration) {
+                        Expiration retry = new Expiration(expiration.source, expiration.player, System.currentTimeMillis() + RETRY_DELAY);
+                        pending.put(key(expiration.source, expiration.player), retry);
+                        queue.add(retry);
+                    }
+                }
+            }
+        }
+        synchronized (this) {
+            arm();
+        }
+    }
+
+    /**
+     * Builds the key of a player on a source. Player names are compared ignoring case.
+     *
+     * @param source The name of the source.
+     * @param player The player.
+     * @return key The key.
+     */
+    private static String key(String source, String player) {
+        return source + '\t' + player.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * A scheduled pardon. Instances of this class are immutable and compared by identity, so a replaced expiration
+     * is told apart from its replacement.
+     */
+    private static final class Expiration implements Comparable<Expiration> {
+
+        /**
+         * The name of the source the player is banned on.
+         */
+        private final String source;
+
+        /**
+         * The banned player.
+         */
+        private final String player;
+
+        /**
+         * The time of the pardon, in milliseconds since the epoch.
+         */
+        private final long expiresAt;
+
+        /**
+         * Main constructor for Expiration.
+         *
+         * @param source    The name of the source the player is banned on.
+         * @param player    The banned player.
+         * @param expiresAt The time of the pardon, in milliseconds since the epoch.
+         */
+        private Expiration(String source, String player, long expiresAt) {
+            this.source = source;
+            this.player = player;
+            this.expiresAt = expiresAt;
+        }
+
+        @Override
+        public int compareTo(Expiration o) {
+            return Long.compare(expiresAt, o.expiresAt);
+        }
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * BanBot: A Discord bot and an HTTP server that manages the Templex banlist.
+ * Copyright (C) 2018  vtcakavsmoace
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.templex.banbot.http;
+
+import co.templex.banbot.banlist.BanEntry;
+import co.templex.banbot.banlist.Banlist;
+import co.templex.banbot.banlist.BanlistIndex;
+import co.templex.banbot.banlist.BanlistParser;
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replicates banlists from a primary BanBot over HTTP, publishing them into local replicas (see
+ * {@link Banlist#replica(double)}).
+ * <p>
+ * Each poll asks the primary's "/changes" endpoint for the revisions since the last one held. The primary answers
+ * with just those revisions while its change log still covers them, and with the full banlist otherwise, such as on
+ * the first poll, after a long disconnect or after the primary restarted. Failed polls are retried with exponential
+ * backoff while the replicas keep serving the last revision held.
+ */
+public class Follower {
+
+    /**
+     * The logger instance for all instances of Follower. This serves solely for debug purposes.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(Follower.class);
+
+    /**
+     * The longest delay between retries after failed polls, in milliseconds.
+     */
+    private static final long MAX_BACKOFF = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * The timeout for connecting to and reading from the primary, in milliseconds.
+     */
+    private static final int TIMEOUT = (int) TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * The base URL of the primary, without a trailing slash.
+     */
+    private final String primary;
+
+    /**
+     * The replication state of each replica, keyed by server source name.
+     */
+    private final Map<String, Cursor> cursors = new LinkedHashMap<>();
+
+    /**
+     * The delay between polls, in milliseconds.
+     */
+    private final long interval;
+
+    /**
+     * The single-threaded executor on which polls run.
+     */
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    /**
+     * Main constructor for Follower.
+     *
+     * @param primary  The base URL of the primary, ex. "http://primary:8080".
+     * @param replicas The replicas to publish to, keyed by the server source name they replicate.
+     * @param interval The delay between polls, in milliseconds.
+     */
+    public Follower(@NonNull String primary, @NonNull Map<String, Banlist> replicas, long interval) {
+        this.primary = primary.endsWith("/") ? primary.substring(0, primary.length() - 1) : primary;
+        for (Map.Entry<String, Banlist> replica : replicas.entrySet()) {
+            cursors.put(replica.getKey(), new Cursor(replica.getValue()));
+        }
+        this.interval = interval;
+    }
+
+    /**
+     * Starts polling the primary.
+     */
+    public void start() {
+        executor.scheduleWithFixedDelay(this::poll, 0, interval, TimeUnit.MILLISECONDS);
+        logger.info(String.format("Following %s for %d banlists every %d ms.", primary, cursors.size(), interval));
+    }
+
+    /**
+     * Stops polling the primary.
+     */
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Checks whether every replica holds a revision of the primary.
+     *
+     * @return synced Whether every replica has synchronized at least once.
+     */
+    public boolean isSynced() {
+        for (Cursor cursor : cursors.values()) {
+            if (cursor.epoch == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Polls the primary once for every replica that is not backing off.
+     */
+    private void poll() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Cursor> entry : cursors.entrySet()) {
+            Cursor cursor = entry.getValue();
+            if (now < cursor.retryAt) {
+                continue;
+            }
+            try {
+                sync(entry.getKey(), cursor);
+                if (cursor.failures > 0) {
+                    logger.info(String.format("Reconnected to %s for %s after %d failed polls.", primary, entry.getKey(), cursor.failures));
+                }
+                cursor.failures = 0;
+                cursor.retryAt = 0;
+            } catch (IOException | RuntimeException e) {
+                long backoff = Math.min(MAX_BACKOFF, interval << Math.min(cursor.failures, 16));
+                if (cursor.failures == 0) {
+                    logger.warn(String.format("Unable to replicate %s from %s, serving revision %d until reconnected.",
+                            entry.getKey(), primary, cursor.revision), e);
+                }
+                cursor.failures++;
+                cursor.retryAt = now + backoff;
+            }
+        }
+    }
+
+    /**
+     * Brings a single replica up to date with the primary.
+     *
+     * @param name   The server source name of the replica.
+     * @param cursor The replication state of the replica.
+     * @throws IOException If the primary is unreachable or answers with an error or a malformed banlist.
+     */
+    private void sync(String name, Cursor cursor) throws IOException {
+        URL url = new URL(String.format("%s/changes?server=%s&epoch=%d&since=%d", primary, encode(name), cursor.epoch, cursor.revision));
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(TIMEOUT);
+        connection.setReadTimeout(TIMEOUT);
+        // the connection is left open for reuse, so polls do not pay for a new handshake
+        if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+            String status = String.format("Primary answered %d %s.", connection.getResponseCode(), connection.getResponseMessage());
+            discard(connection);
+            throw new IOException(status);
+        }
+        long epoch, revision;
+        try (InputStream in = connection.getInputStream()) {
+            epoch = Long.parseLong(header(connection, "X-Banlist-Epoch"));
+            revision = Long.parseLong(header(connection, "X-Banlist-Revision"));
+            boolean full = Boolean.parseBoolean(header(connection, "X-Banlist-Full"));
+            if (full) {
+                BanlistIndex previous = cursor.replica.getIndex();
+                BanlistIndex.Builder builder = new BanlistIndex.Builder(previous.size());
+                BanlistParser.parse(Channels.newChannel(in), builder::add);
+                cursor.replica.publish(revision, builder.build());
+            } else if (revision != cursor.revision) {
+                BanlistIndex previous = cursor.replica.getIndex();
+                BanlistIndex.Builder builder = new BanlistIndex.Builder(previous.size() + 16).addAll(previous);
+                Set<UUID> touched = new LinkedHashSet<>();
+                BanlistParser.parseChanges(Channels.newChannel(in), entry -> {
+                    builder.add(entry);
+                    touched.add(entry.getUuid());
+                }, uuid -> {
+                    builder.remove(uuid);
+                    touched.add(uuid);
+                });
+                // several revisions may be replayed at once, so only their net effect is published
+                BanlistIndex index = builder.build();
+                List<BanEntry> added = new ArrayList<>(), removed = new ArrayList<>();
+                for (UUID uuid : touched) {
+                    int position = index.indexOf(uuid), previousPosition = previous.indexOf(uuid);
+                    if (position >= 0) {
+                        if (previousPosition < 0 || !index.entryEquals(position, previous, previousPosition)) {
+                            added.add(index.get(position));
+                        }
+                    } else if (previousPosition >= 0) {
+                        removed.add(previous.get(previousPosition));
+                    }
+                }
+                cursor.replica.publish(revision, index, added, removed);
+            }
+        }
+        cursor.epoch = epoch;
+        cursor.revision = revision;
+    }
+
+    /**
+     * Reads an error response to its end and closes it, so that its connection goes back to the keep-alive pool
+     * rather than staying open. The connection is dropped should the response be unreadable.
+     *
+     * @param connection The connection answered with an error.
+     */
+    private static void discard(HttpURLConnection connection) {
+        try (InputStream in = connection.getErrorStream()) {
+            if (in != null) {
+                byte[] buffer = new byte[1024];
+                while (in.read(buffer) >= 0) {
+                    // the body of an error is of no use
+                }
+            }
+        } catch (IOException e) {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Reads a required response header.
+     *
+     * @param connection The connection to read from.
+     * @param name       The name of the header.
+     * @return value The value of the header.
+     * @throws IOException If the header is absent.
+     */
+    private static String header(HttpURLConnection connection, String name) throws IOException {
+        String value = connection.getHeaderField(name);
+        if (value == null) {
+            throw new IOException(String.format("Primary response lacks %s.", name));
+        }
+        return value;
+    }
+
+    /**
+     * Encodes a query parameter value.
+     *
+     * @param value The value to encode.
+     * @return encoded The encoded value.
+     */
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is not supported.", e);
+        }
+    }
+
+    /**
+     * The replication state of a single replica. Only written by the polling thread.
+     */
+    private static final class Cursor {
+
+        /**
+         * The replica published to.
+         */
+        private final Banlist replica;
+
+        /**
+         * The epoch of the revision held, or 0 if nothing has been replicated.
+         */
+        private volatile long epoch;
+
+        /**
+         * The revision held.
+         */
+        private long revision;
+
+        /**
+         * The number of consecutive failed polls.
+         */
+        private int failures;
+
+        /**
+         * The time before which no poll is attempted, in milliseconds since the epoch.
+         */
+        private long retryAt;
+
+        /**
+         * Main constructor for Cursor.
+         *
+         * @param replica The replica published to.
+         */
+        private Cursor(Banlist replica) {
+            this.replica = replica;
+        }
+    }
+}
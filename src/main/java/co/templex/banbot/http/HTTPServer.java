@@ -18,22 +18,51 @@
 
 package co.templex.banbot.http;
 
+import co.templex.banbot.ServerSource;
+import co.templex.banbot.StartupTimer;
+import co.templex.banbot.banlist.BanEntry;
+import co.templex.banbot.banlist.Banlist;
+import co.templex.banbot.banlist.BanlistChangeLog;
+import co.templex.banbot.banlist.BanlistIndex;
+import co.templex.banbot.banlist.BanlistParser;
+import co.templex.banbot.banlist.BanlistSnapshot;
+import co.templex.banbot.banlist.BanlistWriter;
+import co.templex.banbot.banlist.BloomFilter;
+import co.templex.banbot.banlist.IpBanEntry;
+import co.templex.banbot.banlist.IpBanlist;
+import co.templex.banbot.banlist.IpRange;
+import co.templex.banbot.banlist.MergedBanlist;
 import fi.iki.elonen.NanoHTTPD;
 import lombok.NonNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
-
-import static co.templex.banbot.Util.readPathAsString;
+import java.util.function.BooleanSupplier;
 
 /**
- * HTTP Server implementation for hosting JUST the banlist. This server will return nothing but the banlist or, in the
- * case where the banlist is not readable, error code 500 and an appropriate message.
+ * HTTP Server implementation for hosting JUST the banlist. This server will return nothing but the banlist (or one of
+ * its compact binary forms) or, in the case where the banlist is not readable, error code 500 and an appropriate
+ * message.
  */
 public class HTTPServer extends NanoHTTPD {
 
@@ -42,6 +71,21 @@ public class HTTPServer extends NanoHTTPD {
      */
     private static final Logger logger = LoggerFactory.getLogger(HTTPServer.class);
 
+    /**
+     * The status served by "/ready" while any component is not ready.
+     */
+    private static final Response.IStatus SERVICE_UNAVAILABLE = new Response.IStatus() {
+        @Override
+        public String getDescription() {
+            return "503 Service Unavailable";
+        }
+
+        @Override
+        public int getRequestStatus() {
+            return 503;
+        }
+    };
+
     /**
      * Shutdown latch for the Bot instance.
      */
@@ -52,6 +96,57 @@ public class HTTPServer extends NanoHTTPD {
      */
     private final AtomicBoolean shutdown = new AtomicBoolean(false);
 
+    /**
+     * The banlists served by this HTTP server, keyed by server source name, in configuration order.
+     */
+    private final Map<String, Banlist> banlists = new LinkedHashMap<>();
+
+    /**
+     * The IP banlists served by this HTTP server, keyed by server source name.
+     */
+    private final Map<String, IpBanlist> ipBanlists = new HashMap<>();
+
+    /**
+     * The deduplicated view over the banlists of every source.
+     */
+    private final MergedBanlist mergedBanlist;
+
+    /**
+     * The time this server was created, distinguishing its merge revisions from those of earlier processes.
+     */
+    private final long mergeEpoch = System.currentTimeMillis();
+
+    /**
+     * The change logs replicas catch up from, keyed by server source name.
+     */
+    private final Map<String, BanlistChangeLog> changeLogs = new HashMap<>();
+
+    /**
+     * The replicator publishing into the banlists, or null if this server reads them from disk.
+     */
+    private final Follower follower;
+
+    /**
+     * The name of the source served when a request names none.
+     */
+    private final String defaultSource;
+
+    /**
+     * The timer which startup phases are reported to.
+     */
+    private final StartupTimer startupTimer;
+
+    /**
+     * The readiness of components outside of this server, keyed by component name. See
+     * {@link #addReadinessCheck(String, BooleanSupplier)}.
+     */
+    private final Map<String, BooleanSupplier> readinessChecks = new ConcurrentHashMap<>();
+
+    /**
+     * Whether the banlists read from disk have been loaded once since start, successfully or not.
+     */
+    private volatile boolean warmedUp;
+
     /**
      * Main constructor for the HTTP Server class. Accepts a properties instance and a countdown latch instance. Note
      * that the properties instance passed may have no entries; the defaults for the HTTP Server is hosting at
@@ -59,28 +154,173 @@ public class HTTPServer extends NanoHTTPD {
      * <p>
      * Users may optionally specify a host with the "host" property and specify a port with the "port" property within
      * the properties file. The properties file may optionally not exist, but should be named "http.properties" if
-     * custom specification is required.
+     * custom specification is required. The "bloom-false-positive-rate" property sets the false positive rate the
+     * served Bloom filter is sized for, and defaults to 0.01. The "merge-rule" property decides which entry the merged
+     * banlist keeps for a player banned on several servers, either "newest" (the default) or "longest-expiry".
+     * The "change-log-capacity" property sets how many changed entries are kept for replicas to catch up from, and
+     * defaults to 65536.
+     * <p>
+     * Setting the "primary" property to the base URL of another BanBot HTTP server makes this server a follower: its
+     * banlists are replicated from the primary every "replication-interval" milliseconds (default 1000) rather than
+     * read from disk. The "replicate" property lists the server sources replicated, separated by commas, and defaults
+     * to "default". IP bans are not replicated.
+     * <p>
+     * Unless following, this serves the banlists of the working directory only; see
+     * {@link #HTTPServer(Properties, List, CountDownLatch)} for serving several servers.
      *
      * @param properties    The properties associated with this HTTP Server instance. This may be empty.
      * @param shutdownLatch The shutdown latch associated with this HTTP Server instance.
      */
     public HTTPServer(@NonNull Properties properties, @NonNull CountDownLatch shutdownLatch) {
+        this(properties, defaultSources(properties), shutdownLatch);
+    }
+
+    /**
+     * Constructor for the HTTP Server class serving the banlists of the passed server sources. Requests select a
+     * source by the "server" parameter, and are served the first source if they name none.
+     *
+     * @param properties    The properties associated with this HTTP Server instance. This may be empty.
+     * @param sources       The server sources whose banlists are served. Must not be empty.
+     * @param shutdownLatch The shutdown latch associated with this HTTP Server instance.
+     */
+    public HTTPServer(@NonNull Properties properties, @NonNull List<ServerSource> sources, @NonNull CountDownLatch shutdownLatch) {
+        this(properties, sources, shutdownLatch, new StartupTimer());
+    }
+
+    /**
+     * Constructor for the HTTP Server class serving the banlists of the passed server sources and reporting its startup
+     * phases, the bind and the loading of the banlists, to the passed timer.
+     *
+     * @param properties    The properties associated with this HTTP Server instance. This may be empty.
+     * @param sources       The server sources whose banlists are served. Must not be empty.
+     * @param shutdownLatch The shutdown latch associated with this HTTP Server instance.
+     * @param startupTimer  The timer which startup phases are reported to.
+     */
+    public HTTPServer(@NonNull Properties properties, @NonNull List<ServerSource> sources, @NonNull CountDownLatch shutdownLatch,
+                      @NonNull StartupTimer startupTimer) {
         super(properties.getProperty("host", "0.0.0.0"), Integer.parseInt(properties.getProperty("port", "8080")));
+        if (sources.isEmpty()) {
+            throw new IllegalArgumentException("At least one server source is required.");
+        }
         this.shutdownLatch = shutdownLatch;
+        double falsePositiveRate = Double.parseDouble(properties.getProperty("bloom-false-positive-rate", "0.01"));
+        String primary = properties.getProperty("primary");
+        int changeLogCapacity = Integer.parseInt(properties.getProperty("change-log-capacity", "65536"));
+        for (ServerSource source : sources) {
+            Banlist banlist = primary == null
+                    ? new Banlist(source.getBanlistPath(), falsePositiveRate)
+                    : Banlist.replica(falsePositiveRate);
+            BanlistChangeLog changeLog = new BanlistChangeLog(changeLogCapacity);
+            banlist.addListener(changeLog);
+            banlists.put(source.getName(), banlist);
+            changeLogs.put(source.getName(), changeLog);
+            if (primary == null) {
+                ipBanlists.put(source.getName(), new IpBanlist(source.getIpBanlistPath()));
+            }
+        }
+        this.follower = primary == null ? null : new Follower(primary, banlists,
+                Long.parseLong(properties.getProperty("replication-interval", "1000")));
+        this.defaultSource = sources.get(0).getName();
+        this.mergedBanlist = new MergedBanlist(new ArrayList<>(banlists.values()),
+                MergedBanlist.ConflictRule.fromName(properties.getProperty("merge-rule", "newest")));
+        this.startupTimer = startupTimer;
+        if (follower == null) {
+            startupTimer.expect("http bind", "banlist warm-up");
+        } else {
+            startupTimer.expect("http bind");
+        }
+    }
+
+    /**
+     * Adds a component to those reported on "/health" and "/ready", ex. the Discord bot.
+     *
+     * @param component The name of the component.
+     * @param ready     Checks whether the component is ready. Called on every request to either URI.
+     */
+    public void addReadinessCheck(@NonNull String component, @NonNull BooleanSupplier ready) {
+        readinessChecks.put(component, ready);
+    }
+
+    /**
+     * Determines the sources served when none are passed: those replicated if following, else the working directory.
+     *
+     * @param properties The properties associated with this HTTP Server instance.
+     * @return sources The sources to serve.
+     */
+    public static List<ServerSource> defaultSources(@NonNull Properties properties) {
+        Path directory = Paths.get(System.getProperty("user.dir"));
+        if (properties.getProperty("primary") == null) {
+            return Collections.singletonList(ServerSource.of(ServerSource.DEFAULT_NAME, directory, null));
+        }
+        List<ServerSource> sources = new ArrayList<>();
+        for (String name : properties.getProperty("replicate", ServerSource.DEFAULT_NAME).split(",")) {
+            if (!name.trim().isEmpty()) {
+                sources.add(ServerSource.of(name.trim(), directory, null)); // only the name of a replicated source is used
+            }
+        }
+        return sources;
     }
 
     /**
      * Establishes and runs the HTTP Server. The server will begin to listen for connections as specified in the
      * constructor.
+     * <p>
+     * The server accepts requests as soon as it is bound. The banlists are then loaded in the background, in parallel
+     * across sources, so that the first requests need not load them; "/ready" reports when they are.
      *
      * @throws IOException Iff the port is already used on the specified host.
      */
     public void start() throws IOException {
         Runtime.getRuntime().addShutdownHook(new Thread(this::stop)); // trap for shutdown
-        start(NanoHTTPD.SOCKET_READ_TIMEOUT, true);
+        long binding = System.nanoTime();
+        try {
+            start(NanoHTTPD.SOCKET_READ_TIMEOUT, true);
+        } catch (IOException e) {
+            startupTimer.fail("http bind", binding);
+            throw e;
+        }
+        startupTimer.end("http bind", binding);
+        if (follower != null) {
+            follower.start();
+        } else {
+            warmUp();
+        }
         logger.info("HTTP Server initialized and started.");
     }
 
+    /**
+     * Loads every banlist and IP banlist on a temporary pool, one source per task.
+     */
+    private void warmUp() {
+        long warming = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(banlists.size(), Runtime.getRuntime().availableProcessors())));
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        for (Map.Entry<String, Banlist> banlist : banlists.entrySet()) {
+            IpBanlist ipBanlist = ipBanlists.get(banlist.getKey());
+            tasks.add(CompletableFuture.runAsync(() -> {
+                try {
+                    banlist.getValue().refresh();
+                    ipBanlist.refresh();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, pool).whenComplete((ignored, t) -> {
+                if (t != null) {
+                    logger.warn(String.format("Unable to load the banlists of %s, retrying on request.", banlist.getKey()), t);
+                }
+            }));
+        }
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).whenComplete((ignored, t) -> {
+            pool.shutdown();
+            warmedUp = true;
+            if (t == null) {
+                startupTimer.end("banlist warm-up", warming);
+            } else {
+                startupTimer.fail("banlist warm-up", warming);
+            }
+        });
+    }
+
     /**
      * Shutdown method for the HTTP server. This is only overridden to ensure that the countdown latch is triggered.
      */
@@ -88,6 +328,9 @@ public class HTTPServer extends NanoHTTPD {
     public void stop() {
         logger.info("Shutting down...");
         if (!shutdown.getAndSet(true)) {
+            if (follower != null) {
+                follower.stop();
+            }
             super.stop();
             shutdownLatch.countDown();
         }
@@ -97,42 +340,305 @@ public class HTTPServer extends NanoHTTPD {
     /**
      * Serve method for this HTTP server, which either serves the banlist or an error code 500 with an appropriate
      * message. This implements NanoHTTPD#serve.
+     * <p>
+     * The compact binary forms of the banlist are served on "/snapshot" and "/bloom"; see {@link BanlistSnapshot} and
+     * {@link BloomFilter} for their layouts. Both carry an entity tag, so clients may poll with If-None-Match. Single
+     * entries are served on "/lookup" by either the "uuid" or "name" parameter, and unexpired IP bans covering an
+     * address on "/ip" by the "address" parameter. Every other URI serves the banlist itself.
+     * <p>
+     * Every URI accepts a "server" parameter naming the server source to serve; a 404 is served for unknown sources.
+     * The deduplicated banlist of all sources is served on "/merged", which ignores that parameter. Replicas catch up
+     * on "/changes"; see {@link Follower}.
+     * <p>
+     * The state of every component is served on "/health", and again on "/ready", which answers 503 rather than 200
+     * while any component is not ready.
      *
-     * @param session The HTTP session. This is unused by this implementation.
+     * @param session The HTTP session.
      * @return response The response sent to the client.
      */
     @Override
     public Response serve(IHTTPSession session) {
+        switch (session.getUri()) {
+            case "/merged":
+                return serveMerged(session);
+            case "/health":
+                return serveHealth(false);
+            case "/ready":
+                return serveHealth(true);
+            default:
+                break;
+        }
+        String source = session.getParms().getOrDefault("server", defaultSource);
+        Banlist banlist = banlists.get(source);
+        if (banlist == null) {
+            return newFixedLengthResponse(Response.Status.NOT_FOUND, NanoHTTPD.MIME_PLAINTEXT, "Unknown server.");
+        }
+        switch (session.getUri()) {
+            case "/snapshot":
+                return serveBinary(session, banlist, true);
+            case "/bloom":
+                return serveBinary(session, banlist, false);
+            case "/lookup":
+                return serveLookup(session, banlist);
+            case "/ip":
+                return serveIpLookup(session, ipBanlists.get(source));
+            case "/changes":
+                return serveChanges(session, banlist, changeLogs.get(source));
+            default:
+                break;
+        }
+        if (banlist.getPath() == null) { // replicas have no file to stream
+            Response response = newChunkedResponse(Response.Status.OK, "application/json", BanlistWriter.toJsonStream(banlist.getIndex()));
+            response.addHeader("Access-Control-Allow-Origin", "*");
+            return response;
+        }
         Response response;
         try {
-            response = newFixedLengthResponse(readPathAsString(Paths.get(System.getProperty("user.dir"), "banned-players.json")));
-            response.setStatus(new Response.IStatus() {
-                @Override
-                public String getDescription() {
-                    return "OK";
-                }
-
-                @Override
-                public int getRequestStatus() {
-                    return 200;
-                }
-            });
+            // streamed rather than read into memory, as the banlist may be very large
+            response = newFixedLengthResponse(Response.Status.OK, "application/json",
+                    Files.newInputStream(banlist.getPath()), Files.size(banlist.getPath()));
             response.addHeader("Access-Control-Allow-Origin:", "*");
         } catch (IOException e) {
             logger.warn("Unable to read banned-players.json", e);
-            response = newFixedLengthResponse("Unable to fetch banned players list.");
-            response.setStatus(new Response.IStatus() {
-                @Override
-                public String getDescription() {
-                    return "Internal Server Error";
-                }
+            response = newErrorResponse();
+        }
+        return response;
+    }
+
+    /**
+     * Serves the deduplicated banlist of all sources, merging any changed source first. The banlist is encoded while
+     * it is sent rather than held in encoded form. A 304 is served if the client already holds the current revision.
+     *
+     * @param session The HTTP session.
+     * @return response The response sent to the client.
+     */
+    private Response serveMerged(IHTTPSession session) {
+        try {
+            mergedBanlist.refresh();
+        } catch (IOException e) {
+            logger.warn("Unable to read a banned-players.json", e);
+            return newErrorResponse();
+        }
+        // the shards and revision may be published apart, so the revision is read first and may only understate
+        long revision = mergedBanlist.getRevision();
+        List<BanlistIndex> shards = mergedBanlist.getShards();
+        String etag = String.format("\"%x-%d\"", mergeEpoch, revision);
+        Response response = etag.equals(session.getHeaders().get("if-none-match"))
+                ? newFixedLengthResponse(Response.Status.NOT_MODIFIED, "application/json", "")
+                : newChunkedResponse(Response.Status.OK, "application/json", BanlistWriter.toJsonStream(shards));
+        response.addHeader("ETag", etag);
+        response.addHeader("X-Banlist-Revision", Long.toString(revision));
+        response.addHeader("Access-Control-Allow-Origin", "*");
+        return response;
+    }
+
+    /**
+     * Serves either the binary snapshot or the Bloom filter of the banlist, refreshing the banlist first if the file
+     * has changed. A 304 is served if the client already holds the current revision.
+     *
+     * @param session  The HTTP session.
+     * @param banlist  The banlist to serve.
+     * @param snapshot True to serve the snapshot, false to serve the Bloom filter.
+     * @return response The response sent to the client.
+     */
+    private Response serveBinary(IHTTPSession session, Banlist banlist, boolean snapshot) {
+        try {
+            banlist.refresh();
+        } catch (IOException e) {
+            logger.warn("Unable to read banned-players.json", e);
+            return newErrorResponse();
+        }
+        // the labels and the body must come from the same revision, so they are read in one go
+        Banlist.Encoded current = snapshot ? banlist.getEncodedSnapshot() : banlist.getEncodedBloomFilter();
+        String etag = String.format("\"%016x\"", current.getChecksum());
+        Response response;
+        if (etag.equals(session.getHeaders().get("if-none-match"))) {
+            response = newFixedLengthResponse(Response.Status.NOT_MODIFIED, "application/octet-stream", "");
+        } else {
+            byte[] bytes = current.getBytes();
+            response = newFixedLengthResponse(Response.Status.OK, "application/octet-stream", new ByteArrayInputStream(bytes), bytes.length);
+        }
+        response.addHeader("ETag", etag);
+        response.addHeader("X-Banlist-Revision", Long.toString(current.getRevision()));
+        response.addHeader("Access-Control-Allow-Origin", "*");
+        return response;
+    }
+
+    /**
+     * Serves a single banlist entry, looked up by either the "uuid" or the "name" parameter. A 404 is served if the
+     * player is not banned, and a 400 if neither parameter is a valid key.
+     *
+     * @param session The HTTP session.
+     * @param banlist The banlist to look the entry up in.
+     * @return response The response sent to the client.
+     */
+    private Response serveLookup(IHTTPSession session, Banlist banlist) {
+        try {
+            banlist.refresh();
+        } catch (IOException e) {
+            logger.warn("Unable to read banned-players.json", e);
+            return newErrorResponse();
+        }
+        BanlistIndex index = banlist.getIndex();
+        Map<String, String> parameters = session.getParms();
+        int position;
+        if (parameters.containsKey("uuid")) {
+            try {
+                position = index.indexOf(UUID.fromString(parameters.get("uuid")));
+            } catch (IllegalArgumentException e) {
+                return newFixedLengthResponse(Response.Status.BAD_REQUEST, NanoHTTPD.MIME_PLAINTEXT, "Invalid UUID.");
+            }
+        } else if (parameters.containsKey("name")) {
+            position = index.indexOfName(parameters.get("name"));
+        } else {
+            return newFixedLengthResponse(Response.Status.BAD_REQUEST, NanoHTTPD.MIME_PLAINTEXT, "Expected a uuid or name parameter.");
+        }
+        Response response = position < 0
+                ? newFixedLengthResponse(Response.Status.NOT_FOUND, "application/json", "null")
+                : newFixedLengthResponse(Response.Status.OK, "application/json", BanlistWriter.toJson(index.get(position)));
+        response.addHeader("X-Banlist-Revision", Long.toString(banlist.getSnapshot().getRevision()));
+        response.addHeader("Access-Control-Allow-Origin", "*");
+        return response;
+    }
 
-                @Override
-                public int getRequestStatus() {
-                    return 500;
+    /**
+     * Serves the most specific unexpired IP ban covering the address passed by the "address" parameter. A 404 is
+     * served if the address is not banned, and a 400 if the address is not a valid IPv4 or IPv6 literal.
+     *
+     * @param session   The HTTP session.
+     * @param ipBanlist The IP banlist to look the address up in, or null if this server is a follower.
+     * @return response The response sent to the client.
+     */
+    private Response serveIpLookup(IHTTPSession session, IpBanlist ipBanlist) {
+        if (ipBanlist == null) {
+            return newFixedLengthResponse(Response.Status.NOT_FOUND, NanoHTTPD.MIME_PLAINTEXT, "IP bans are not replicated.");
+        }
+        try {
+            ipBanlist.refresh();
+        } catch (IOException e) {
+            logger.warn("Unable to read banned-ips.json", e);
+            return newErrorResponse();
+        }
+        String address = session.getParms().get("address");
+        IpRange range;
+        try {
+            range = IpRange.parse(address == null ? "" : address);
+        } catch (IllegalArgumentException e) {
+            return newFixedLengthResponse(Response.Status.BAD_REQUEST, NanoHTTPD.MIME_PLAINTEXT, "Expected an IPv4 or IPv6 address parameter.");
+        }
+        IpBanEntry entry = ipBanlist.getTree().find(range, System.currentTimeMillis() / 1000);
+        Response response = entry == null
+                ? newFixedLengthResponse(Response.Status.NOT_FOUND, "application/json", "null")
+                : newFixedLengthResponse(Response.Status.OK, "application/json", entry.toJson());
+        response.addHeader("Access-Control-Allow-Origin", "*");
+        return response;
+    }
+
+    /**
+     * Serves what a replica needs to catch up from the revision passed by the "since" parameter of the epoch passed
+     * by the "epoch" parameter: the change feed since then if still logged, else the full banlist. The headers
+     * X-Banlist-Epoch, X-Banlist-Revision and X-Banlist-Full tell which was sent and which revision it brings the
+     * replica to. See {@link BanlistParser#parseChanges} for the change feed format.
+     *
+     * @param session   The HTTP session.
+     * @param banlist   The banlist to replicate.
+     * @param changeLog The change log of the banlist.
+     * @return response The response sent to the client.
+     */
+    private Response serveChanges(IHTTPSession session, Banlist banlist, BanlistChangeLog changeLog) {
+        long epoch, since;
+        try {
+            epoch = Long.parseLong(session.getParms().getOrDefault("epoch", "0"));
+            since = Long.parseLong(session.getParms().getOrDefault("since", "0"));
+        } catch (NumberFormatException e) {
+            return newFixedLengthResponse(Response.Status.BAD_REQUEST, NanoHTTPD.MIME_PLAINTEXT, "Expected numeric epoch and since parameters.");
+        }
+        try {
+            banlist.refresh();
+        } catch (IOException e) {
+            logger.warn("Unable to read banned-players.json", e);
+            return newErrorResponse();
+        }
+        BanlistChangeLog.Feed feed = changeLog.read(epoch, since);
+        Response response;
+        if (feed.isFull()) {
+            response = newChunkedResponse(Response.Status.OK, "application/json", BanlistWriter.toJsonStream(feed.getIndex()));
+        } else {
+            StringBuilder builder = new StringBuilder().append('[');
+            for (BanlistChangeLog.Change change : feed.getChanges()) {
+                for (BanEntry entry : change.getRemoved()) {
+                    BanlistWriter.appendRemoval(builder.length() > 1 ? builder.append(',') : builder, entry.getUuid());
+                }
+                for (BanEntry entry : change.getAdded()) {
+                    BanlistWriter.appendEntry(builder.length() > 1 ? builder.append(',') : builder, entry);
                 }
-            });
+            }
+            response = newFixedLengthResponse(Response.Status.OK, "application/json", builder.append(']').toString());
+        }
+        response.addHeader("X-Banlist-Epoch", Long.toString(feed.getEpoch()));
+        response.addHeader("X-Banlist-Revision", Long.toString(feed.getRevision()));
+        response.addHeader("X-Banlist-Full", Boolean.toString(feed.isFull()));
+        return response;
+    }
+
+    /**
+     * Serves the state of every component as a JSON object, ex.
+     * {"ready":false,"components":{"http":"ready","banlists":"loading","discord":"not ready"}}.
+     *
+     * @param readiness Whether a 503 is served while any component is not ready.
+     * @return response The response sent to the client.
+     */
+    private Response serveHealth(boolean readiness) {
+        Map<String, String> states = new LinkedHashMap<>();
+        states.put("http", "ready");
+        if (follower != null) {
+            states.put("replication", follower.isSynced() ? "ready" : "syncing");
+        } else if (!warmedUp) {
+            states.put("banlists", "loading");
+        } else {
+            boolean loaded = true;
+            for (Banlist banlist : banlists.values()) {
+                loaded &= banlist.getSnapshot().getRevision() > 0;
+            }
+            states.put("banlists", loaded ? "ready" : "failed");
         }
+        for (Map.Entry<String, BooleanSupplier> check : readinessChecks.entrySet()) {
+            states.put(check.getKey(), check.getValue().getAsBoolean() ? "ready" : "not ready");
+        }
+        boolean ready = states.values().stream().allMatch("ready"::equals);
+        StringBuilder builder = new StringBuilder().append("{\"ready\":").append(ready).append(",\"components\":{");
+        for (Map.Entry<String, String> state : states.entrySet()) {
+            if (builder.charAt(builder.length() - 1) != '{') {
+                builder.append(',');
+            }
+            builder.append('"').append(state.getKey()).append("\":\"").append(state.getValue()).append('"');
+        }
+        Response response = newFixedLengthResponse(Response.Status.OK, "application/json", builder.append("}}").toString());
+        if (readiness && !ready) {
+            response.setStatus(SERVICE_UNAVAILABLE);
+        }
+        response.addHeader("Cache-Control", "no-cache");
+        return response;
+    }
+
+    /**
+     * Creates the error code 500 response served when the banlist is unreadable.
+     *
+     * @return response The error response.
+     */
+    private Response newErrorResponse() {
+        Response response = newFixedLengthResponse("Unable to fetch banned players list.");
+        response.setStatus(new Response.IStatus() {
+            @Override
+            public String getDescription() {
+                return "Internal Server Error";
+            }
+
+            @Override
+            public int getRequestStatus() {
+                return 500;
+            }
+        });
         return response;
     }
 }
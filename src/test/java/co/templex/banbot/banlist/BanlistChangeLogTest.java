@@ -0,0 +1,127 @@
+/*
+ * BanBot: A Discord bot and an HTTP server that manages the Templex banlist.
+ * Copyright (C) 2018  vtcakavsmoace
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.templex.banbot.banlist;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link BanlistChangeLog}.
+ */
+public class BanlistChangeLogTest {
+
+    /**
+     * Checks that a replica of the current epoch catches up from the revisions it missed.
+     */
+    @Test
+    public void replaysMissedRevisions() {
+        BanlistChangeLog log = new BanlistChangeLog(100);
+        publish(log, 1, 0, 10, true);
+        publish(log, 2, 0, 11, false);
+        publish(log, 3, 0, 12, false);
+
+        BanlistChangeLog.Feed feed = log.read(log.getEpoch(), 1);
+        assertFalse(feed.isFull());
+        assertEquals(3, feed.getRevision());
+        assertEquals(2, feed.getChanges().size());
+        assertEquals(2, feed.getChanges().get(0).getRevision());
+        assertEquals(new UUID(10, 10), feed.getChanges().get(0).getAdded().get(0).getUuid());
+        assertEquals(3, feed.getChanges().get(1).getRevision());
+
+        assertEquals(1, log.read(log.getEpoch(), 2).getChanges().size());
+        BanlistChangeLog.Feed current = log.read(log.getEpoch(), 3);
+        assertFalse(current.isFull());
+        assertTrue(current.getChanges().isEmpty());
+    }
+
+    /**
+     * Checks that a replica holding a revision of another epoch, as after the primary restarts and numbers its
+     * revisions afresh, gets the full banlist even though its revision number is known to the log.
+     */
+    @Test
+    public void sendsFullBanlistAcrossEpochs() {
+        BanlistChangeLog before = new BanlistChangeLog(100), after = new BanlistChangeLog(100);
+        publish(before, 1, 0, 10, true);
+        publish(before, 2, 0, 11, false);
+        publish(after, 1, 0, 5, true);
+        BanlistIndex latest = publish(after, 2, 0, 6, false);
+        assertNotEquals(before.getEpoch(), after.getEpoch());
+
+        BanlistChangeLog.Feed feed = after.read(before.getEpoch(), 1);
+        assertTrue(feed.isFull());
+        assertEquals(after.getEpoch(), feed.getEpoch());
+        assertEquals(2, feed.getRevision());
+        assertSame(latest, feed.getIndex());
+        assertFalse(after.read(feed.getEpoch(), feed.getRevision()).isFull());
+    }
+
+    /**
+     * Checks that revisions the log no longer or never held, whether dropped for capacity, preceding a full diff or
+     * ahead of the log, are answered with the full banlist.
+     */
+    @Test
+    public void sendsFullBanlistForUnloggedRevisions() {
+        BanlistChangeLog log = new BanlistChangeLog(2);
+        publish(log, 1, 0, 10, true);
+        publish(log, 2, 0, 11, false);
+        publish(log, 3, 0, 12, false);
+        publish(log, 4, 0, 13, false);
+        assertTrue(log.read(log.getEpoch(), 1).isFull());
+        assertEquals(2, log.read(log.getEpoch(), 2).getChanges().size());
+        assertTrue(log.read(log.getEpoch(), 5).isFull());
+
+        publish(log, 5, 0, 20, true);
+        assertTrue(log.read(log.getEpoch(), 4).isFull());
+        publish(log, 7, 0, 21, false);
+        assertTrue(log.read(log.getEpoch(), 5).isFull());
+        assertFalse(log.read(log.getEpoch(), 7).isFull());
+    }
+
+    /**
+     * Publishes a revision holding consecutive entries to a log. An incremental revision adds its last entry.
+     *
+     * @param log      The log.
+     * @param revision The revision number.
+     * @param from     The number of the first entry.
+     * @param to       The number past the last entry.
+     * @param full     Whether to publish a full diff.
+     * @return index The index of the revision.
+     */
+    private static BanlistIndex publish(BanlistChangeLog log, long revision, int from, int to, boolean full) {
+        BanlistIndex.Builder builder = new BanlistIndex.Builder();
+        BanEntry last = null;
+        for (int i = from; i < to; i++) {
+            last = new BanEntry(new UUID(i, i), "player" + i, null, "Server", "forever", "Banned");
+            builder.add(last);
+        }
+        BanlistIndex index = builder.build();
+        log.accept(full
+                ? new BanlistDiff(revision, BanlistIndex.EMPTY, index)
+                : new BanlistDiff(revision, BanlistIndex.EMPTY, index, Collections.singletonList(last), Collections.emptyList()));
+        return index;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * BanBot: A Discord bot and an HTTP server that manages the Templex banlist.
+ * Copyright (C) 2018  vtcakavsmoace
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.templex.banbot.banlist;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link BanlistIndex}.
+ */
+public class BanlistIndexTest {
+
+    /**
+     * Checks that UUIDs sharing a hash are each found at their own position. UUIDs whose most significant bits and
+     * rotated least significant bits xor to the same value hash identically.
+     */
+    @Test
+    public void findsCollidingUuids() {
+        long key = 0x123456789ABCDEF0L;
+        BanlistIndex.Builder builder = new BanlistIndex.Builder(1);
+        for (int i = 0; i < 100; i++) {
+            builder.add(entry(colliding(key, i), "player" + i, null, null));
+        }
+        BanlistIndex index = builder.build();
+        assertEquals(100, index.size());
+        for (int i = 0; i < 100; i++) {
+            int position = index.indexOf(colliding(key, i));
+            assertEquals("player" + i, index.get(position).getName());
+            assertEquals(position, index.indexOfName("PLAYER" + i));
+        }
+        assertEquals(-1, index.indexOf(colliding(key, 100)));
+    }
+
+    /**
+     * Checks that every entry stays reachable after the builder grows from its smallest capacity.
+     */
+    @Test
+    public void findsEntriesAfterGrowth() {
+        Random random = new Random(42);
+        UUID[] uuids = new UUID[20000];
+        BanlistIndex.Builder builder = new BanlistIndex.Builder(1);
+        for (int i = 0; i < uuids.length; i++) {
+            uuids[i] = new UUID(random.nextLong(), random.nextLong());
+            builder.add(entry(uuids[i], "Name_" + i, "2018-01-01 00:00:00 +0000", "forever"));
+        }
+        BanlistIndex index = builder.build();
+        assertEquals(uuids.length, index.size());
+        for (int i = 0; i < uuids.length; i++) {
+            int position = index.indexOf(uuids[i]);
+            assertEquals(uuids[i], index.getUuid(position));
+            assertEquals(position, index.indexOfName("name_" + i));
+        }
+        assertEquals(-1, index.indexOf(new UUID(random.nextLong(), random.nextLong())));
+        assertEquals(-1, index.indexOfName("name_" + uuids.length));
+        assertEquals(uuids.length, new BanlistIndex.Builder(1).addAll(index).build().size());
+    }
+
+    /**
+     * Checks that a later entry for a UUID supersedes an earlier one, and that a removal only drops what was added
+     * before it.
+     */
+    @Test
+    public void appliesSupersedingEntriesAndRemovals() {
+        UUID a = new UUID(1, 1), b = new UUID(2, 2), c = new UUID(3, 3);
+        BanlistIndex index = new BanlistIndex.Builder()
+                .add(entry(a, "Old", null, null))
+                .add(entry(b, "Removed", null, null))
+                .add(entry(c, "Readded", null, null))
+                .remove(b)
+                .remove(c)
+                .add(entry(a, "New", null, null))
+                .add(entry(c, "Readded", null, null))
+                .build();
+        assertEquals(2, index.size());
+        assertEquals("New", index.get(index.indexOf(a)).getName());
+        assertEquals(-1, index.indexOfName("Old"));
+        assertEquals(-1, index.indexOf(b));
+        assertEquals(-1, index.indexOfName("Removed"));
+        assertTrue(index.indexOf(c) >= 0);
+    }
+
+    /**
+     * Checks that dates are returned the way they were added, offset included.
+     */
+    @Test
+    public void keepsDateOffsets() {
+        BanEntry west = entry(new UUID(1, 1), "West", "2018-03-04 05:06:07 -0500", "2019-03-04 05:06:07 +0530");
+        BanEntry none = entry(new UUID(2, 2), "None", null, "forever");
+        BanlistIndex index = new BanlistIndex.Builder().add(west).add(none).build();
+        assertEquals(west, index.get(index.indexOf(west.getUuid())));
+        assertEquals(none, index.get(index.indexOf(none.getUuid())));
+        assertNull(index.get(index.indexOf(none.getUuid())).getCreated());
+        assertTrue(index.entryEquals(index.indexOf(west.getUuid()), west));
+        BanEntry utc = entry(west.getUuid(), "West", "2018-03-04 10:06:07 +0000", west.getExpires());
+        assertEquals(index.getCreated(index.indexOf(west.getUuid())), BanlistIndex.parseDate(utc.getCreated()));
+        assertFalse(index.entryEquals(index.indexOf(west.getUuid()), utc));
+    }
+
+    /**
+     * Creates a UUID sharing its hash with every other UUID created from the same key.
+     *
+     * @param key The shared key.
+     * @param n   The number distinguishing this UUID.
+     * @return uuid The UUID.
+     */
+    private static UUID colliding(long key, long n) {
+        return new UUID(key ^ n, Long.rotateRight(n, 32));
+    }
+
+    /**
+     * Creates a ban entry.
+     *
+     * @param uuid    The banned UUID.
+     * @param name    The banned name.
+     * @param created The creation date.
+     * @param expires The expiry date.
+     * @return entry The entry.
+     */
+    private static BanEntry entry(UUID uuid, String name, String created, String expires) {
+        return new BanEntry(uuid, name, created, "Server", expires, "Banned");
+    }
+}
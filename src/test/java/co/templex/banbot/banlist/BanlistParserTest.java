@@ -0,0 +1,177 @@
+/*
+ * BanBot: A Discord bot and an HTTP server that manages the Templex banlist.
+ * Copyright (C) 2018  vtcakavsmoace
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.templex.banbot.banlist;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link BanlistParser}.
+ */
+public class BanlistParserTest {
+
+    /**
+     * The UUID of the first test entry.
+     */
+    private static final String UUID_A = "069a79f4-44e9-4726-a5be-fca90e38aaf5";
+
+    /**
+     * The UUID of the second test entry.
+     */
+    private static final String UUID_B = "853c80ef-3c37-49fd-aa49-938b674adae6";
+
+    /**
+     * Checks that entries are handed over in file order, ignoring unknown fields of any type.
+     *
+     * @throws IOException If the banlist fails to parse.
+     */
+    @Test
+    public void parsesEntriesInFileOrder() throws IOException {
+        List<BanEntry> entries = parse("\uFEFF [ {\"uuid\": \"" + UUID_A + "\", \"name\": \"Notch\", \"extra\": {\"a\": [1, {\"b\": \"]}\"}]},"
+                + " \"created\": \"2018-01-01 00:00:00 +0000\", \"source\": \"Server\", \"expires\": \"forever\","
+                + " \"reason\": \"Banned\"},\n{\"uuid\":\"" + UUID_B + "\",\"name\":\"jeb_\",\"level\":4} ]");
+        assertEquals(2, entries.size());
+        assertEquals(new BanEntry(UUID.fromString(UUID_A), "Notch", "2018-01-01 00:00:00 +0000", "Server", "forever", "Banned"),
+                entries.get(0));
+        assertEquals("jeb_", entries.get(1).getName());
+        assertNull(entries.get(1).getReason());
+    }
+
+    /**
+     * Checks that empty files and arrays are empty banlists.
+     *
+     * @throws IOException If the banlist fails to parse.
+     */
+    @Test
+    public void parsesEmptyBanlists() throws IOException {
+        assertTrue(parse("").isEmpty());
+        assertTrue(parse(" [ ] ").isEmpty());
+    }
+
+    /**
+     * Checks that every escape sequence and multi-byte character is decoded.
+     *
+     * @throws IOException If the banlist fails to parse.
+     */
+    @Test
+    public void decodesEscapes() throws IOException {
+        List<BanEntry> entries = parse("[{\"uuid\": \"" + UUID_A + "\", \"name\": \"a\\\"b\\\\c\\/d\","
+                + " \"reason\": \"\\b\\f\\n\\r\\t\\u00e9\\u00E9\\ud83d\\ude00 \u00e9\ud83d\ude00\"}]");
+        assertEquals("a\"b\\c/d", entries.get(0).getName());
+        assertEquals("\b\f\n\r\t\u00e9\u00e9\ud83d\ude00 \u00e9\ud83d\ude00", entries.get(0).getReason());
+    }
+
+    /**
+     * Checks that strings are decoded when they cross a read buffer boundary.
+     *
+     * @throws IOException If the banlist fails to parse.
+     */
+    @Test
+    public void decodesStringsAcrossBuffers() throws IOException {
+        char[] padding = new char[64 * 1024 - 20];
+        Arrays.fill(padding, 'x');
+        String reason = new String(padding) + "\u00e9\\n\\u00e9" + new String(padding);
+        List<BanEntry> entries = parse("[{\"uuid\": \"" + UUID_A + "\", \"reason\": \"" + reason + "\"}, {\"uuid\": \"" + UUID_B + "\"}]");
+        assertEquals(new String(padding) + "\u00e9\n\u00e9" + new String(padding), entries.get(0).getReason());
+        assertEquals(UUID.fromString(UUID_B), entries.get(1).getUuid());
+    }
+
+    /**
+     * Checks that entries without a valid UUID are skipped and counted.
+     *
+     * @throws IOException If the banlist fails to parse.
+     */
+    @Test
+    public void skipsEntriesWithoutValidUuids() throws IOException {
+        List<BanEntry> entries = new ArrayList<>();
+        int skipped = BanlistParser.parse(channel("[{\"name\": \"a\"}, {\"uuid\": \"nope\"}, {\"uuid\": \"" + UUID_A + "\"}]"), entries::add);
+        assertEquals(2, skipped);
+        assertEquals(1, entries.size());
+    }
+
+    /**
+     * Checks that malformed banlists fail to parse rather than yielding partial results.
+     */
+    @Test
+    public void rejectsMalformedBanlists() {
+        String entry = "{\"uuid\": \"" + UUID_A + "\"}";
+        for (String json : new String[]{
+                "{}",
+                "[" + entry,
+                "[" + entry + ",",
+                "[" + entry + " " + entry + "]",
+                "[{\"uuid\" \"" + UUID_A + "\"}]",
+                "[{\"uuid\": \"" + UUID_A + "}]",
+                "[{\"uuid\": \"" + UUID_A + "\"]",
+                "[{\"name\": \"\\u00g9\"}]",
+                "[{\"name\": \"\\u00",
+                "\uFEFF\uFEFF[]"}) {
+            try {
+                parse(json);
+                fail("Parsed malformed banlist " + json);
+            } catch (IOException e) {
+                // expected
+            }
+        }
+        try {
+            BanlistParser.parse(Channels.newChannel(new ByteArrayInputStream(new byte[]{'[', '{', '"', (byte) 0xC3, 'a', '"'})), e -> {
+            });
+            fail("Parsed invalid UTF-8");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Parses a banlist held in a string.
+     *
+     * @param json The banlist.
+     * @return entries The parsed entries.
+     * @throws IOException If the banlist fails to parse.
+     */
+    private static List<BanEntry> parse(String json) throws IOException {
+        List<BanEntry> entries = new ArrayList<>();
+        BanlistParser.parse(channel(json), entries::add);
+        return entries;
+    }
+
+    /**
+     * Creates a channel reading a string as UTF-8.
+     *
+     * @param json The content of the channel.
+     * @return channel The channel.
+     */
+    private static ReadableByteChannel channel(String json) {
+        return Channels.newChannel(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+}
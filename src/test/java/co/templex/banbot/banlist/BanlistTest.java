@@ -0,0 +1,202 @@
+/*
+ * BanBot: A Discord bot and an HTTP server that manages the Templex banlist.
+ * Copyright (C) 2018  vtcakavsmoace
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.templex.banbot.banlist;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link Banlist}.
+ */
+public class BanlistTest {
+
+    /**
+     * The number of entries in the initial banlist file.
+     */
+    private static final int SIZE = 5000;
+
+    /**
+     * The directory holding the banlist file.
+     */
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * The banlist file.
+     */
+    private Path path;
+
+    /**
+     * The modification time given to the next write of the banlist file, in milliseconds since the epoch.
+     */
+    private long modified = 1500000000000L;
+
+    /**
+     * Creates the banlist file path.
+     */
+    @Before
+    public void setUp() {
+        path = folder.getRoot().toPath().resolve("banned-players.json");
+    }
+
+    /**
+     * Checks that the first load is a full diff and small changes after it are incremental.
+     *
+     * @throws IOException If the banlist fails to load.
+     */
+    @Test
+    public void diffsSmallChanges() throws IOException {
+        Banlist banlist = new Banlist(path, 0.01);
+        write(entries(0, SIZE, "Banned"));
+        BanlistDiff first = banlist.refresh();
+        assertTrue(first.isFull());
+        assertEquals(SIZE, first.getCurrent().size());
+        assertNull(banlist.refresh());
+
+        BanlistIndex.Builder changed = new BanlistIndex.Builder().addAll(entries(10, SIZE, "Banned"));
+        changed.add(entry(0, "Griefing")).add(entry(SIZE, "Banned"));
+        write(changed.build());
+        BanlistDiff diff = banlist.refresh();
+        assertFalse(diff.isFull());
+        assertEquals(2, diff.getRevision());
+        assertEquals(2, diff.getAdded().size());
+        assertEquals("Griefing", diff.getAdded().get(0).getReason());
+        assertEquals(9, diff.getRemoved().size());
+        assertEquals(SIZE - 10 + 2, banlist.getIndex().size());
+    }
+
+    /**
+     * Checks that a reload changing more than the diff limit cuts over to a full diff, for both added and removed
+     * entries.
+     *
+     * @throws IOException If the banlist fails to load.
+     */
+    @Test
+    public void cutsOverToFullDiffs() throws IOException {
+        Banlist banlist = new Banlist(path, 0.01);
+        write(entries(0, SIZE, "Banned"));
+        banlist.refresh();
+
+        write(new BanlistIndex.Builder().addAll(entries(0, 4096, "Changed")).addAll(entries(4096, SIZE, "Banned")).build());
+        BanlistDiff atLimit = banlist.refresh();
+        assertFalse(atLimit.isFull());
+        assertEquals(4096, atLimit.getAdded().size());
+
+        write(new BanlistIndex.Builder().addAll(entries(0, 4097, "Banned")).addAll(entries(4097, SIZE, "Changed")).build());
+        BanlistDiff added = banlist.refresh();
+        assertTrue(added.isFull());
+        assertEquals(SIZE, added.getCurrent().size());
+
+        write(new BanlistIndex.Builder().addAll(entries(4000, 4097, "Banned")).addAll(entries(4097, SIZE, "Changed")).build());
+        BanlistDiff removed = banlist.refresh();
+        assertFalse(removed.isFull());
+        assertEquals(4000, removed.getRemoved().size());
+        write(entries(SIZE, SIZE * 2, "Banned"));
+        BanlistDiff replaced = banlist.refresh();
+        assertTrue(replaced.isFull());
+        assertEquals(SIZE, replaced.getCurrent().size());
+        assertEquals(SIZE - 4000, replaced.getPrevious().size());
+    }
+
+    /**
+     * Checks that a file failing to parse keeps the last good revision and is not parsed again until it changes.
+     *
+     * @throws IOException If the banlist fails to load.
+     */
+    @Test
+    public void keepsRevisionOfMalformedFile() throws IOException {
+        Banlist banlist = new Banlist(path, 0.01);
+        write(entries(0, 10, "Banned"));
+        banlist.refresh();
+        writeRaw("[{\"uuid\": ");
+        try {
+            banlist.refresh();
+            fail("Loaded a malformed banlist");
+        } catch (IOException e) {
+            // expected
+        }
+        assertNull(banlist.refresh());
+        assertEquals(10, banlist.getIndex().size());
+        write(entries(0, 11, "Banned"));
+        assertEquals(2, banlist.refresh().getRevision());
+    }
+
+    /**
+     * Creates an index of consecutive test entries.
+     *
+     * @param from   The number of the first entry.
+     * @param to     The number past the last entry.
+     * @param reason The reason of every entry.
+     * @return index The index.
+     */
+    private static BanlistIndex entries(int from, int to, String reason) {
+        BanlistIndex.Builder builder = new BanlistIndex.Builder(to - from);
+        for (int i = from; i < to; i++) {
+            builder.add(entry(i, reason));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Creates a test entry.
+     *
+     * @param n      The number of the entry.
+     * @param reason The reason of the entry.
+     * @return entry The entry.
+     */
+    private static BanEntry entry(int n, String reason) {
+        return new BanEntry(new UUID(n, n), "player" + n, "2018-01-01 00:00:00 +0000", "Server", "forever", reason);
+    }
+
+    /**
+     * Writes an index to the banlist file.
+     *
+     * @param index The index to write.
+     * @throws IOException If the file cannot be written.
+     */
+    private void write(BanlistIndex index) throws IOException {
+        writeRaw(BanlistWriter.toJson(index));
+    }
+
+    /**
+     * Writes the banlist file, advancing its modification time so every write is seen as a change.
+     *
+     * @param json The content of the file.
+     * @throws IOException If the file cannot be written.
+     */
+    private void writeRaw(String json) throws IOException {
+        Files.write(path, json.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(path, FileTime.fromMillis(modified += 1000));
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * BanBot: A Discord bot and an HTTP server that manages the Templex banlist.
+ * Copyright (C) 2018  vtcakavsmoace
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.templex.banbot.banlist;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for {@link IpBanTree}.
+ */
+public class IpBanTreeTest {
+
+    /**
+     * The lookup time of every test, in seconds since the epoch: 2020-01-01 00:00:00 UTC.
+     */
+    private static final long NOW = 1577836800L;
+
+    /**
+     * Checks that the longest matching IPv4 prefix wins, whatever order the ranges were added in.
+     */
+    @Test
+    public void findsLongestIpv4Prefix() {
+        IpBanEntry wide = entry("10.0.0.0/8"), narrow = entry("10.1.0.0/16"), single = entry("10.1.2.3");
+        IpBanTree tree = IpBanTree.EMPTY.with(single).with(wide).with(narrow).with(entry("192.168.0.0/16"));
+        assertEquals(4, tree.size());
+        assertSame(single, find(tree, "10.1.2.3"));
+        assertSame(narrow, find(tree, "10.1.2.4"));
+        assertSame(wide, find(tree, "10.2.0.1"));
+        assertNull(find(tree, "11.0.0.1"));
+        assertNull(find(tree, "::a01:203"));
+    }
+
+    /**
+     * Checks that the longest matching IPv6 prefix wins.
+     */
+    @Test
+    public void findsLongestIpv6Prefix() {
+        IpBanEntry wide = entry("2001:db8::/32"), narrow = entry("2001:db8:1::/48"), single = entry("2001:db8:1::1");
+        IpBanTree tree = IpBanTree.EMPTY.with(wide).with(narrow).with(single);
+        assertSame(single, find(tree, "2001:db8:1:0:0:0:0:1"));
+        assertSame(narrow, find(tree, "2001:db8:1::2"));
+        assertSame(wide, find(tree, "2001:db8:ffff::1"));
+        assertNull(find(tree, "2001:db9::1"));
+        assertSame(single, tree.without(narrow.getRange()).find(IpRange.parse("2001:db8:1::1"), NOW));
+        assertSame(wide, tree.without(narrow.getRange()).find(IpRange.parse("2001:db8:1::2"), NOW));
+    }
+
+    /**
+     * Checks that IPv4-mapped IPv6 addresses and ranges match their IPv4 equivalents.
+     */
+    @Test
+    public void matchesIpv4MappedAddresses() {
+        IpBanEntry ipv4 = entry("10.1.0.0/16"), mapped = entry("::ffff:10.1.2.0/120");
+        IpBanTree tree = IpBanTree.EMPTY.with(ipv4).with(mapped);
+        assertSame(ipv4, find(tree, "::ffff:10.1.9.9"));
+        assertSame(mapped, find(tree, "10.1.2.3"));
+        assertSame(mapped, find(tree, "::ffff:a01:203"));
+        assertNull(find(tree, "::ffff:10.2.0.1"));
+    }
+
+    /**
+     * Checks that expired bans are skipped in favour of shorter unexpired prefixes.
+     */
+    @Test
+    public void skipsExpiredBans() {
+        IpBanEntry wide = entry("10.0.0.0/8");
+        IpBanEntry expired = new IpBanEntry(IpRange.parse("10.1.0.0/16"), null, null, "2019-12-31 23:59:59 +0000", null);
+        IpBanEntry unexpired = new IpBanEntry(IpRange.parse("10.1.2.0/24"), null, null, "2020-01-01 02:00:00 +0100", null);
+        IpBanTree tree = IpBanTree.EMPTY.with(wide).with(expired).with(unexpired);
+        assertSame(wide, find(tree, "10.1.3.1"));
+        assertSame(unexpired, find(tree, "10.1.2.1"));
+        assertNull(tree.without(wide.getRange()).find(IpRange.parse("10.1.3.1"), NOW));
+        assertSame(expired, tree.find(IpRange.parse("10.1.3.1"), NOW - 3600));
+    }
+
+    /**
+     * Looks up an address at {@link #NOW}.
+     *
+     * @param tree    The tree to search.
+     * @param address The address.
+     * @return entry The matching entry, or null.
+     */
+    private static IpBanEntry find(IpBanTree tree, String address) {
+        return tree.find(IpRange.parse(address), NOW);
+    }
+
+    /**
+     * Creates a permanent IP ban.
+     *
+     * @param range The banned range.
+     * @return entry The entry.
+     */
+    private static IpBanEntry entry(String range) {
+        return new IpBanEntry(IpRange.parse(range), "2018-01-01 00:00:00 +0000", "Server", "forever", "Banned");
+    }
+}
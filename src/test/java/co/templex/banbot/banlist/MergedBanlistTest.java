@@ -0,0 +1,134 @@
+/*
+ * BanBot: A Discord bot and an HTTP server that manages the Templex banlist.
+ * Copyright (C) 2018  vtcakavsmoace
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.templex.banbot.banlist;
+
+import co.templex.banbot.banlist.MergedBanlist.ConflictRule;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for {@link MergedBanlist}.
+ */
+public class MergedBanlistTest {
+
+    /**
+     * The UUID banned on both servers.
+     */
+    private static final UUID PLAYER = new UUID(1, 1);
+
+    /**
+     * Checks that the most recently created ban wins under {@link ConflictRule#NEWEST}, with ties going to the longest
+     * expiry and then to the first banlist.
+     */
+    @Test
+    public void newestRuleKeepsLatestBan() {
+        assertEquals("second", merge(ConflictRule.NEWEST,
+                entry("first", "2018-01-01 00:00:00 +0000", "forever"),
+                entry("second", "2018-06-01 00:00:00 +0000", "2018-07-01 00:00:00 +0000")));
+        assertEquals("first", merge(ConflictRule.NEWEST,
+                entry("first", "2018-01-01 00:00:00 +0000", "forever"),
+                entry("second", "2018-01-01 01:00:00 +0100", "2019-01-01 00:00:00 +0000")));
+        assertEquals("first", merge(ConflictRule.NEWEST,
+                entry("first", "2018-01-01 00:00:00 +0000", "forever"),
+                entry("second", "2018-01-01 00:00:00 +0000", "forever")));
+    }
+
+    /**
+     * Checks that the ban expiring last wins under {@link ConflictRule#LONGEST_EXPIRY}, permanent bans above all, with
+     * ties going to the most recently created and then to the first banlist.
+     */
+    @Test
+    public void longestExpiryRuleKeepsLastExpiringBan() {
+        assertEquals("first", merge(ConflictRule.LONGEST_EXPIRY,
+                entry("first", "2018-01-01 00:00:00 +0000", "forever"),
+                entry("second", "2018-06-01 00:00:00 +0000", "2018-07-01 00:00:00 +0000")));
+        assertEquals("second", merge(ConflictRule.LONGEST_EXPIRY,
+                entry("first", "2018-01-01 00:00:00 +0000", "2018-07-01 00:00:00 +0000"),
+                entry("second", "2018-06-01 00:00:00 +0000", "2018-07-01 00:00:00 +0000")));
+        assertEquals("first", merge(ConflictRule.LONGEST_EXPIRY,
+                entry("first", "2018-01-01 00:00:00 +0000", "forever"),
+                entry("second", "2018-01-01 00:00:00 +0000", "forever")));
+        assertEquals(ConflictRule.LONGEST_EXPIRY, ConflictRule.fromName(" longest-expiry"));
+    }
+
+    /**
+     * Checks that incremental and full diffs re-resolve the UUIDs they touch, falling back to the other banlist when
+     * the winning entry is removed.
+     */
+    @Test
+    public void reResolvesChangedEntries() {
+        Banlist first = Banlist.replica(0.01), second = Banlist.replica(0.01);
+        MergedBanlist merged = new MergedBanlist(Arrays.asList(first, second), ConflictRule.NEWEST);
+        BanEntry old = entry("first", "2018-01-01 00:00:00 +0000", "forever");
+        BanEntry recent = entry("second", "2018-06-01 00:00:00 +0000", "forever");
+        BanEntry other = new BanEntry(new UUID(2, 2), "other", "2018-01-01 00:00:00 +0000", "first", "forever", "Banned");
+        first.publish(1, new BanlistIndex.Builder().add(old).add(other).build());
+        second.publish(1, new BanlistIndex.Builder().add(recent).build());
+        assertEquals(2, merged.size());
+        assertEquals("second", merged.get(PLAYER).getSource());
+
+        second.publish(2, BanlistIndex.EMPTY, Collections.emptyList(), Collections.singletonList(recent));
+        assertEquals("first", merged.get(PLAYER).getSource());
+        assertEquals(other, merged.get(other.getUuid()));
+
+        first.publish(2, new BanlistIndex.Builder().add(other).build());
+        assertNull(merged.get(PLAYER));
+        assertEquals(1, merged.size());
+        int entries = 0;
+        for (BanlistIndex shard : merged.getShards()) {
+            entries += shard.size();
+        }
+        assertEquals(1, entries);
+    }
+
+    /**
+     * Merges two banlists each holding a ban of {@link #PLAYER}.
+     *
+     * @param rule   The conflict rule.
+     * @param first  The ban on the first banlist.
+     * @param second The ban on the second banlist.
+     * @return source The source of the winning ban.
+     */
+    private static String merge(ConflictRule rule, BanEntry first, BanEntry second) {
+        Banlist a = Banlist.replica(0.01), b = Banlist.replica(0.01);
+        MergedBanlist merged = new MergedBanlist(Arrays.asList(a, b), rule);
+        a.publish(1, new BanlistIndex.Builder().add(first).build());
+        b.publish(1, new BanlistIndex.Builder().add(second).build());
+        assertEquals(1, merged.size());
+        return merged.get(PLAYER).getSource();
+    }
+
+    /**
+     * Creates a ban of {@link #PLAYER}.
+     *
+     * @param source  The source of the ban, standing in for the banlist holding it.
+     * @param created The creation date.
+     * @param expires The expiry date.
+     * @return entry The entry.
+     */
+    private static BanEntry entry(String source, String created, String expires) {
+        return new BanEntry(PLAYER, "player", created, source, expires, "Banned");
+    }
+}
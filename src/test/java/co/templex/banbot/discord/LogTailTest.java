@@ -0,0 +1,205 @@
+/*
+ * BanBot: A Discord bot and an HTTP server that manages the Templex banlist.
+ * Copyright (C) 2018  vtcakavsmoace
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.templex.banbot.discord;
+
+import co.templex.banbot.ServerSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link LogTail}.
+ */
+public class LogTailTest {
+
+    /**
+     * The directory holding the server directory.
+     */
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * The lines passed on by the tail under test.
+     */
+    private final List<String> lines = new ArrayList<>();
+
+    /**
+     * The tailed latest.log.
+     */
+    private Path file;
+
+    /**
+     * The tail under test.
+     */
+    private LogTail tail;
+
+    /**
+     * Creates the log directory and the tail.
+     *
+     * @throws IOException If the log directory cannot be created.
+     */
+    @Before
+    public void setUp() throws IOException {
+        ServerSource source = ServerSource.of("survival", folder.getRoot().toPath(), null);
+        Files.createDirectories(source.getLogDirectory());
+        file = source.getLogDirectory().resolve(LogTail.LATEST_LOG);
+        tail = new LogTail(source, lines::add);
+    }
+
+    /**
+     * Closes the tail.
+     */
+    @After
+    public void tearDown() {
+        tail.close();
+    }
+
+    /**
+     * Checks that what was written before the tail attached is skipped, and that partial lines are held back until
+     * they are complete.
+     *
+     * @throws IOException If the log cannot be read or written.
+     */
+    @Test
+    public void skipsExistingLinesAndJoinsPartialLines() throws IOException {
+        append("old\n");
+        tail.skipToEnd();
+        assertFalse(tail.poll());
+        append("first\r\nsec");
+        assertTrue(tail.poll());
+        assertEquals(Collections.singletonList("first"), lines);
+        append("ond\nthi");
+        append("rd\n");
+        tail.poll();
+        assertEquals(Arrays.asList("first", "second", "third"), lines);
+    }
+
+    /**
+     * Checks that a log created after the tail attached is read from its start.
+     *
+     * @throws IOException If the log cannot be read or written.
+     */
+    @Test
+    public void readsLogCreatedAfterAttaching() throws IOException {
+        tail.skipToEnd();
+        assertFalse(tail.poll());
+        append("first\n");
+        tail.poll();
+        assertEquals(Collections.singletonList("first"), lines);
+    }
+
+    /**
+     * Checks that a rotated log is read to its end before the new log is read from its start.
+     *
+     * @throws IOException If the log cannot be read or written.
+     */
+    @Test
+    public void readsRotatedLogToItsEnd() throws IOException {
+        tail.skipToEnd();
+        append("first\n");
+        tail.poll();
+        append("last of old\n");
+        Files.move(file, file.resolveSibling("2018-01-01-1.log"));
+        append("first of new\n");
+        tail.poll();
+        assertEquals(Arrays.asList("first", "last of old", "first of new"), lines);
+    }
+
+    /**
+     * Checks that a truncated log is read again from its start, dropping any partial line.
+     *
+     * @throws IOException If the log cannot be read or written.
+     */
+    @Test
+    public void rereadsTruncatedLog() throws IOException {
+        tail.skipToEnd();
+        append("a long first line\npartial");
+        tail.poll();
+        Files.write(file, "new\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.TRUNCATE_EXISTING);
+        tail.poll();
+        assertEquals(Arrays.asList("a long first line", "new"), lines);
+    }
+
+    /**
+     * Checks that a tail reopened after a read failure resumes where it left off rather than replaying the log.
+     *
+     * @throws IOException If the log cannot be read or written.
+     */
+    @Test
+    public void resumesAfterReleasing() throws IOException {
+        tail.skipToEnd();
+        append("first\nsec");
+        tail.poll();
+        tail.release();
+        append("ond\n");
+        tail.poll();
+        tail.release();
+        tail.release();
+        tail.poll();
+        assertEquals(Arrays.asList("first", "second"), lines);
+    }
+
+    /**
+     * Checks that a line the consumer fails on costs only itself, whether it was read whole or joined from a partial
+     * line.
+     *
+     * @throws IOException If the log cannot be read or written.
+     */
+    @Test
+    public void skipsLinesTheConsumerFailsOn() throws IOException {
+        tail = new LogTail(tail.getSource(), line -> {
+            if (line.startsWith("bad")) {
+                throw new IllegalStateException(line);
+            }
+            lines.add(line);
+        });
+        tail.skipToEnd();
+        append("one\nbad\ntwo\nba");
+        assertTrue(tail.pollQuietly());
+        append("d partial\nthree\n");
+        assertTrue(tail.pollQuietly());
+        assertEquals(Arrays.asList("one", "two", "three"), lines);
+    }
+
+    /**
+     * Appends text to the log, creating it if absent.
+     *
+     * @param text The text to append.
+     * @throws IOException If the log cannot be written.
+     */
+    private void append(String text) throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * BanBot: A Discord bot and an HTTP server that manages the Templex banlist.
+ * Copyright (C) 2018  vtcakavsmoace
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.templex.banbot.discord;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link StripedExecutor}.
+ */
+public class StripedExecutorTest {
+
+    /**
+     * The number of threads of the pool under the executor.
+     */
+    private static final int THREADS = 8;
+
+    /**
+     * The pool under the executor.
+     */
+    private final ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+
+    /**
+     * Shuts down the pool.
+     */
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Checks that the tasks of each player run in submission order while many players are submitted to concurrently,
+     * whatever the case of the player name.
+     *
+     * @throws InterruptedException If interrupted while waiting for the tasks.
+     */
+    @Test
+    public void keepsPerPlayerOrderUnderConcurrentSubmission() throws InterruptedException {
+        StripedExecutor executor = new StripedExecutor(pool, THREADS);
+        int players = 32, tasks = 2000;
+        List<List<Integer>> seen = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(players * tasks);
+        Thread[] submitters = new Thread[players];
+        for (int p = 0; p < players; p++) {
+            List<Integer> order = new ArrayList<>();
+            seen.add(order);
+            String player = "Player" + p;
+            submitters[p] = new Thread(() -> {
+                for (int i = 0; i < tasks; i++) {
+                    int n = i;
+                    // tasks of one player never overlap, so the list needs no further synchronization
+                    executor.execute(n % 2 == 0 ? player : player.toLowerCase(), () -> {
+                        order.add(n);
+                        done.countDown();
+                    });
+                }
+            });
+        }
+        for (Thread submitter : submitters) {
+            submitter.start();
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        for (List<Integer> order : seen) {
+            assertEquals(tasks, order.size());
+            for (int i = 0; i < tasks; i++) {
+                assertEquals(i, (int) order.get(i));
+            }
+        }
+    }
+
+    /**
+     * Checks that a task of one player does not hold up the tasks of others, while later tasks of the same player
+     * wait for it.
+     *
+     * @throws InterruptedException If interrupted while waiting for the tasks.
+     */
+    @Test
+    public void runsUnrelatedPlayersInParallel() throws InterruptedException {
+        StripedExecutor executor = new StripedExecutor(pool, THREADS);
+        CountDownLatch othersRan = new CountDownLatch(1), done = new CountDownLatch(2);
+        AtomicBoolean blockedRunning = new AtomicBoolean(), overlapped = new AtomicBoolean();
+        boolean[] unblocked = {false};
+        executor.execute("notch", () -> {
+            blockedRunning.set(true);
+            try {
+                unblocked[0] = othersRan.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            blockedRunning.set(false);
+            done.countDown();
+        });
+        executor.execute("NOTCH", () -> {
+            overlapped.set(blockedRunning.get());
+            done.countDown();
+        });
+        for (String player : Arrays.asList("jeb_", "dinnerbone", "grumm", "searge", "marc", "lydia", "ez", "kappische")) {
+            executor.execute(player, othersRan::countDown);
+        }
+        assertTrue(done.await(15, TimeUnit.SECONDS));
+        assertTrue(unblocked[0]);
+        assertFalse(overlapped.get());
+    }
+
+    /**
+     * Checks that a stripe is drained once however many tasks are queued before its drain runs, is scheduled again
+     * for tasks submitted after it, and keeps running tasks after one fails.
+     */
+    @Test
+    public void reschedulesAfterDraining() {
+        Queue<Runnable> scheduled = new ArrayDeque<>();
+        StripedExecutor executor = new StripedExecutor(scheduled::add, 1);
+        List<String> ran = new ArrayList<>();
+        executor.execute("notch", () -> ran.add("first"));
+        executor.execute("notch", () -> {
+            throw new IllegalStateException("failing task");
+        });
+        executor.execute("Notch", () -> ran.add("second"));
+        assertEquals(1, scheduled.size());
+        scheduled.poll().run();
+        assertEquals(Arrays.asList("first", "second"), ran);
+        assertTrue(scheduled.isEmpty());
+        executor.execute("notch", () -> ran.add("third"));
+        assertEquals(1, scheduled.size());
+        scheduled.poll().run();
+        assertEquals(Arrays.asList("first", "second", "third"), ran);
+    }
+
+    /**
+     * Checks that a rejected drain is reported to the submitter and that the queued task runs, in order, with the
+     * next task that is accepted.
+     */
+    @Test
+    public void recoversFromRejectedExecution() {
+        Queue<Runnable> scheduled = new ArrayDeque<>();
+        boolean[] rejecting = {true};
+        StripedExecutor executor = new StripedExecutor(task -> {
+            if (rejecting[0]) {
+                throw new RejectedExecutionException("rejected");
+            }
+            scheduled.add(task);
+        }, 1);
+        List<String> ran = new ArrayList<>();
+        try {
+            executor.execute("notch", () -> ran.add("first"));
+            fail("Rejection was not reported");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        rejecting[0] = false;
+        executor.execute("notch", () -> ran.add("second"));
+        assertEquals(1, scheduled.size());
+        scheduled.poll().run();
+        assertEquals(Arrays.asList("first", "second"), ran);
+    }
+}
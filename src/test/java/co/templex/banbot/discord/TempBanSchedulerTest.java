@@ -0,0 +1,228 @@
+/*
+ * BanBot: A Discord bot and an HTTP server that manages the Templex banlist.
+ * Copyright (C) 2018  vtcakavsmoace
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.templex.banbot.discord;
+
+import co.templex.banbot.ServerSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link TempBanScheduler}.
+ */
+public class TempBanSchedulerTest {
+
+    /**
+     * A pardon time far enough ahead that no test sees it pass.
+     */
+    private static final long LATER = System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * The directory holding the journal.
+     */
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * The journal file.
+     */
+    private Path store;
+
+    /**
+     * The only configured source.
+     */
+    private ServerSource source;
+
+    /**
+     * The scheduler under test, if started.
+     */
+    private TempBanScheduler scheduler;
+
+    /**
+     * Creates the journal path and the configured source.
+     */
+    @Before
+    public void setUp() {
+        store = folder.getRoot().toPath().resolve("tempbans.log");
+        source = ServerSource.of("survival", folder.getRoot().toPath().resolve("survival"), null);
+    }
+
+    /**
+     * Shuts down the scheduler under test.
+     */
+    @After
+    public void tearDown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    /**
+     * Checks that replaying a journal keeps only the latest record of each player, ignoring case, and skips
+     * cancelled and malformed records.
+     *
+     * @throws IOException If the journal cannot be read.
+     */
+    @Test
+    public void replaysDuplicateAndCancelledRecords() throws IOException {
+        write("+\t" + LATER + "\tsurvival\tAlice",
+                "+\t" + (LATER + 1000) + "\tsurvival\talice",
+                "+\t" + LATER + "\tsurvival\tBob",
+                "-\tsurvival\tbob",
+                "-\tsurvival\tbob",
+                "-\tsurvival\tNobody",
+                "+\t" + LATER + "\tsurvival\tCarol",
+                "-\tsurvival\tCarol",
+                "+\t" + LATER + "\tsurvival\tCarol",
+                "+\t" + LATER + "\tcreative\tAlice",
+                "+\tsoon\tsurvival\tDave",
+                "+\t" + LATER + "\tsurv");
+        start();
+        assertEquals(3, scheduler.size());
+        assertTrue(scheduler.cancel(source, "ALICE"));
+        assertFalse(scheduler.cancel(source, "alice"));
+        assertFalse(scheduler.cancel(source, "Bob"));
+        assertTrue(scheduler.cancel(source, "carol"));
+        assertEquals(1, scheduler.size());
+    }
+
+    /**
+     * Checks that schedules and cancellations survive a restart, replacing earlier schedules of the same player.
+     *
+     * @throws IOException If the journal cannot be read or written.
+     */
+    @Test
+    public void replaysOwnJournal() throws IOException {
+        start();
+        scheduler.schedule(source, "Alice", LATER);
+        scheduler.schedule(source, "alice", LATER + 1000);
+        scheduler.schedule(source, "Bob", LATER);
+        scheduler.schedule(source, "Carol", LATER);
+        scheduler.cancel(source, "Bob");
+        scheduler.shutdown();
+        start();
+        assertEquals(2, scheduler.size());
+        assertFalse(scheduler.cancel(source, "Bob"));
+        assertTrue(scheduler.cancel(source, "ALICE"));
+    }
+
+    /**
+     * Checks that a journal mostly made of obsolete records is compacted to its pending schedules on start.
+     *
+     * @throws IOException If the journal cannot be read or written.
+     */
+    @Test
+    public void compactsBloatedJournal() throws IOException {
+        List<String> records = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            records.add("+\t" + LATER + "\tsurvival\tp" + i);
+            records.add("-\tsurvival\tp" + i);
+        }
+        records.add("+\t" + LATER + "\tsurvival\tkept");
+        write(records.toArray(new String[0]));
+        start();
+        assertEquals(1, scheduler.size());
+        assertEquals(Collections.singletonList("+\t" + LATER + "\tsurvival\tkept"), Files.readAllLines(store, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Checks that an overdue schedule replayed for a source that is no longer configured is dropped rather than
+     * retried forever.
+     *
+     * @throws IOException          If the journal cannot be read.
+     * @throws InterruptedException If interrupted while waiting for the expiry.
+     */
+    @Test
+    public void dropsOverdueSchedulesOfUnknownSources() throws IOException, InterruptedException {
+        write("+\t" + (System.currentTimeMillis() - 1000) + "\tcreative\tAlice",
+                "+\t" + LATER + "\tsurvival\tBob");
+        start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (scheduler.size() > 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, scheduler.size());
+        scheduler.shutdown();
+        start();
+        assertEquals(1, scheduler.size());
+    }
+
+    /**
+     * Checks that names which are not Minecraft player names, such as ones holding the journal's delimiters, are
+     * refused rather than journaled.
+     *
+     * @throws IOException If the journal cannot be read or written.
+     */
+    @Test
+    public void refusesInvalidPlayerNames() throws IOException {
+        assertTrue(TempBanScheduler.isPlayerName("Notch_1234567890"));
+        start();
+        for (String player : new String[]{"Notch\tsurvival", "Notch\n+", "", "Notch_12345678901", "Notch-1"}) {
+            assertFalse(TempBanScheduler.isPlayerName(player));
+            try {
+                scheduler.schedule(source, player, LATER);
+                fail("Scheduled invalid player name " + player);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        assertEquals(0, scheduler.size());
+        assertEquals(0, Files.size(store));
+    }
+
+    /**
+     * Starts a new scheduler on the journal.
+     *
+     * @throws IOException If the journal cannot be read.
+     */
+    private void start() throws IOException {
+        scheduler = new TempBanScheduler(store, Collections.singletonList(source));
+        scheduler.start();
+    }
+
+    /**
+     * Writes journal records.
+     *
+     * @param records The records, without their trailing newlines.
+     * @throws IOException If the journal cannot be written.
+     */
+    private void write(String... records) throws IOException {
+        StringBuilder journal = new StringBuilder();
+        for (String record : records) {
+            journal.append(record).append('\n');
+        }
+        Files.write(store, journal.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}